@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+
+@Configuration
+public class JacksonConfig {
+    //Без параметра fields фильм сериализуется целиком
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer filmFieldsFilter() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+                .addFilter(FilmDto.FIELDS_FILTER, SimpleBeanPropertyFilter.serializeAll()));
+    }
+}
@@ -1,58 +1,146 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.dto.FilmCacheStatsDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportDto;
+import ru.yandex.practicum.filmorate.dto.FilmPageDto;
+import ru.yandex.practicum.filmorate.dto.FilmSuggestionDto;
 import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.handler.FilmFieldsAdvice;
+import ru.yandex.practicum.filmorate.model.FilmPart;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/films")
 public class FilmController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final String NDJSON = "application/x-ndjson";
+
     private final FilmService service;
+    private final ObjectProvider<ObjectMapper> objectMapper;
 
     @GetMapping
-    public Collection<FilmDto> getFilms() throws NotFoundException {
-        return service.getFilms();
+    public ResponseEntity<Collection<FilmDto>> getFilms(@RequestParam(required = false) Integer limit,
+                                                        @RequestParam(required = false) String after,
+                                                        @RequestParam(required = false) Set<String> fields)
+            throws CorruptedDataException {
+        return toResponse(service.getFilms(after, limit, fields));
+    }
+
+    @GetMapping(produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportFilms(@RequestParam(required = false) Set<String> fields)
+            throws CorruptedDataException {
+        //Потоковый ответ пишем сами, поэтому фильтр полей подключаем к writer'у явно
+        Set<FilmPart> parts = FilmService.parts(fields);
+        ObjectWriter writer = fields == null || fields.isEmpty()
+                ? objectMapper.getObject().writer()
+                : objectMapper.getObject().writer(FilmFieldsAdvice.filter(fields));
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .body(out -> service.exportFilms(parts, film -> {
+                    try {
+                        out.write(writer.writeValueAsBytes(film));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+    }
+
+    @PostMapping(path = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, NDJSON})
+    public FilmImportDto importFilms(InputStream body) throws IOException {
+        //readValues разворачивает корневой массив и так же читает значения, идущие подряд, как в NDJSON
+        try (MappingIterator<FilmDto> films = objectMapper.getObject().readerFor(FilmDto.class).readValues(body)) {
+            return service.importFilms(films);
+        }
     }
 
     @GetMapping("/{id}")
-    public FilmDto getFilm(@PathVariable int id) throws NotFoundException {
-        return service.getFilm(id);
+    public FilmDto getFilm(@PathVariable int id, @RequestParam(required = false) Set<String> fields,
+                           WebRequest request) throws NotFoundException, CorruptedDataException {
+        //Совпавший If-None-Match отвечаем 304 по одной версии, не собирая фильм
+        if (request.checkNotModified(service.getFilmTag(id))) {
+            return null;
+        }
+
+        return service.getFilm(id, fields);
     }
 
     @GetMapping("/popular")
     public Collection<FilmDto> getMostPopular(@RequestParam(required = false, defaultValue = "10") int count,
                                               @RequestParam(required = false) Integer genreId,
-                                              @RequestParam(required = false) Integer year) {
-        return service.getMostPopular(count, genreId, year);
+                                              @RequestParam(required = false) Integer year,
+                                              @RequestParam(required = false) Integer fromYear,
+                                              @RequestParam(required = false) Integer toYear,
+                                              @RequestParam(required = false) Set<String> fields)
+            throws CorruptedDataException {
+        return service.getMostPopular(count, genreId, year, fromYear, toYear, fields);
+    }
+
+    @GetMapping("/suggest")
+    public Collection<FilmSuggestionDto> suggest(@RequestParam(defaultValue = "") String prefix,
+                                                 @RequestParam(required = false, defaultValue = "10") int limit)
+            throws CorruptedDataException {
+        return service.suggest(prefix, limit);
+    }
+
+    @GetMapping("/cache/stats")
+    public FilmCacheStatsDto getCacheStats() {
+        return service.getCacheStats();
     }
 
     @PostMapping
-    public FilmDto createFilm(@Valid @RequestBody FilmDto film) throws CorruptedDataException,
-            NotFoundException,
-            DuplicatedDataException {
-        service.addFilm(film);
-        return service.getFilm(film.getId());
+    public ResponseEntity<FilmDto> createFilm(@Valid @RequestBody FilmDto film,
+                                              @RequestParam(required = false) Set<String> fields,
+                                              @RequestHeader(name = Prefer.HEADER, required = false) String prefer)
+            throws CorruptedDataException, NotFoundException, DuplicatedDataException {
+        FilmService.validateFields(fields);
+        FilmDto created = service.addFilm(film);
+
+        if (Prefer.minimal(prefer)) {
+            return Prefer.noContent("/films/{id}", created.getId());
+        }
+
+        return ResponseEntity.ok(created);
     }
 
     @PutMapping
-    public FilmDto updateFilm(@Valid @RequestBody FilmDto film) throws NotFoundException,
-            CorruptedDataException,
-            DuplicatedDataException {
+    public FilmDto updateFilm(@Valid @RequestBody FilmDto film, @RequestParam(required = false) Set<String> fields)
+            throws NotFoundException, CorruptedDataException, DuplicatedDataException {
+        FilmService.validateFields(fields);
         return service.updateFilm(film);
     }
 
+    //Фильм в ответ на лайк не отдаем: при отложенной записи счетчик на момент ответа еще не известен,
+    //а перечитывать фильм ради ответа - лишнее чтение на каждый лайк. Сам фильм доступен по Location
     @PutMapping("/{film-id}/like/{id}")
-    public FilmDto likeFilm(@PathVariable("film-id") int filmId, @PathVariable int id) throws NotFoundException {
+    public ResponseEntity<Void> likeFilm(@PathVariable("film-id") int filmId, @PathVariable int id)
+            throws NotFoundException {
         service.addLike(id, filmId);
-        return service.getFilm(filmId);
+
+        return ResponseEntity.noContent().location(Prefer.location("/films/{id}", filmId)).build();
     }
 
     @DeleteMapping("/{filmId}")
@@ -68,19 +156,39 @@ public class FilmController {
     @GetMapping("/common")
     public Collection<FilmDto> getCommonFilms(
             @RequestParam int userId,
-            @RequestParam int friendId) {
-        return service.getCommonFilms(userId, friendId);
+            @RequestParam int friendId,
+            @RequestParam(required = false) Set<String> fields) throws CorruptedDataException {
+        return service.getCommonFilms(userId, friendId, fields);
     }
 
     @GetMapping("/director/{director-id}")
-    public Collection<FilmDto> findDirectorFilms(@PathVariable("director-id") int directorId,
-                                                 @RequestParam(name = "sortBy", defaultValue = "")
-                                                 String sortConditions) throws NotFoundException {
-        return service.findDirectorFilms(directorId, sortConditions);
+    public ResponseEntity<Collection<FilmDto>> findDirectorFilms(@PathVariable("director-id") int directorId,
+                                                                 @RequestParam(name = "sortBy", defaultValue = "")
+                                                                 String sortConditions,
+                                                                 @RequestParam(required = false) Integer limit,
+                                                                 @RequestParam(required = false) String after,
+                                                                 @RequestParam(required = false) Set<String> fields)
+            throws NotFoundException, CorruptedDataException {
+        return toResponse(service.findDirectorFilms(directorId, sortConditions, after, limit, fields));
     }
 
     @GetMapping("/search")
-    public Collection<FilmDto> search(@RequestParam String query, @RequestParam String by) {
-        return service.search(query, by);
+    public ResponseEntity<Collection<FilmDto>> search(@RequestParam String query,
+                                                      @RequestParam String by,
+                                                      @RequestParam(required = false) Integer limit,
+                                                      @RequestParam(required = false) String after,
+                                                      @RequestParam(required = false) Set<String> fields)
+            throws CorruptedDataException {
+        return toResponse(service.search(query, by, after, limit, fields));
+    }
+
+    private ResponseEntity<Collection<FilmDto>> toResponse(FilmPageDto page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+
+        return response.body(page.getFilms());
     }
 }
@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.Arrays;
+
+/**
+ * Заголовок Prefer из RFC 7240. С return=minimal запись отвечает 204 и ссылкой на ресурс в Location,
+ * а тело не собирается вовсе.
+ */
+final class Prefer {
+    static final String HEADER = "Prefer";
+    private static final String APPLIED_HEADER = "Preference-Applied";
+    private static final String RETURN_MINIMAL = "return=minimal";
+
+    private Prefer() {
+    }
+
+    static boolean minimal(String prefer) {
+        return prefer != null && Arrays.stream(prefer.split("[,;]"))
+                .anyMatch(token -> token.trim().equalsIgnoreCase(RETURN_MINIMAL));
+    }
+
+    static <T> ResponseEntity<T> noContent(String path, Object... uriVariables) {
+        return ResponseEntity.noContent()
+                .location(location(path, uriVariables))
+                .header(APPLIED_HEADER, RETURN_MINIMAL)
+                .build();
+    }
+
+    static URI location(String path, Object... uriVariables) {
+        return ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path(path)
+                .buildAndExpand(uriVariables)
+                .toUri();
+    }
+}
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.dto.ReviewDto;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
@@ -29,13 +30,17 @@ public class ReviewController {
     }
 
     @PostMapping
-    public ReviewDto createReview(@Valid @RequestBody ReviewDto reviewDto) throws NotFoundException {
-        return service.addReview(reviewDto);
+    public ResponseEntity<ReviewDto> createReview(@Valid @RequestBody ReviewDto reviewDto,
+                                                  @RequestHeader(name = Prefer.HEADER, required = false)
+                                                  String prefer) throws NotFoundException {
+        return respond(service.addReview(reviewDto), prefer);
     }
 
     @PutMapping
-    public ReviewDto updateReview(@Valid @RequestBody ReviewDto reviewDto) throws NotFoundException {
-        return service.updateReview(reviewDto);
+    public ResponseEntity<ReviewDto> updateReview(@Valid @RequestBody ReviewDto reviewDto,
+                                                  @RequestHeader(name = Prefer.HEADER, required = false)
+                                                  String prefer) throws NotFoundException {
+        return respond(service.updateReview(reviewDto), prefer);
     }
 
     @DeleteMapping("/{id}")
@@ -44,30 +49,41 @@ public class ReviewController {
     }
 
     @PutMapping("/{id}/like/{user-id}")
-    public ReviewDto addLikeReview(@PathVariable("id") int reviewId, @PathVariable("user-id") int userId)
-            throws NotFoundException {
-        service.addLike(reviewId, userId, 1);
-        return service.getReview(reviewId);
+    public ResponseEntity<ReviewDto> addLikeReview(@PathVariable("id") int reviewId,
+                                                   @PathVariable("user-id") int userId,
+                                                   @RequestHeader(name = Prefer.HEADER, required = false)
+                                                   String prefer) throws NotFoundException {
+        return respond(service.addLike(reviewId, userId, 1), prefer);
     }
 
     @PutMapping("/{id}/dislike/{user-id}")
-    public ReviewDto addDislikeReview(@PathVariable("id") int reviewId, @PathVariable("user-id") int userId)
-            throws NotFoundException {
-        service.addLike(reviewId, userId, -1);
-        return service.getReview(reviewId);
+    public ResponseEntity<ReviewDto> addDislikeReview(@PathVariable("id") int reviewId,
+                                                      @PathVariable("user-id") int userId,
+                                                      @RequestHeader(name = Prefer.HEADER, required = false)
+                                                      String prefer) throws NotFoundException {
+        return respond(service.addLike(reviewId, userId, -1), prefer);
     }
 
     @DeleteMapping("/{id}/like/{userId}")
-    public ReviewDto deleteLikeReview(@PathVariable("id") int reviewId, @PathVariable int userId)
-            throws NotFoundException {
-        service.deleteLike(reviewId, userId);
-        return service.getReview(reviewId);
+    public ResponseEntity<ReviewDto> deleteLikeReview(@PathVariable("id") int reviewId, @PathVariable int userId,
+                                                      @RequestHeader(name = Prefer.HEADER, required = false)
+                                                      String prefer) throws NotFoundException {
+        return respond(service.deleteLike(reviewId, userId), prefer);
     }
 
     @DeleteMapping("/{id}/dislike/{userId}")
-    public ReviewDto deleteDislikeReview(@PathVariable("id") int reviewId, @PathVariable int userId)
-            throws NotFoundException {
-        service.deleteLike(reviewId, userId);
-        return service.getReview(reviewId);
+    public ResponseEntity<ReviewDto> deleteDislikeReview(@PathVariable("id") int reviewId, @PathVariable int userId,
+                                                         @RequestHeader(name = Prefer.HEADER, required = false)
+                                                         String prefer) throws NotFoundException {
+        return respond(service.deleteLike(reviewId, userId), prefer);
+    }
+
+    //Сервис собирает отзыв из данных записи и нового значения счетчика, повторно отзыв не читается
+    private static ResponseEntity<ReviewDto> respond(ReviewDto review, String prefer) {
+        if (Prefer.minimal(prefer)) {
+            return Prefer.noContent("/reviews/{id}", review.getReviewId());
+        }
+
+        return ResponseEntity.ok(review);
     }
 }
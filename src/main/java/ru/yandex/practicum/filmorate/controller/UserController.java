@@ -2,21 +2,28 @@ package ru.yandex.practicum.filmorate.controller;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.dto.FeedDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.dto.UserPageDto;
+import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.service.RecommendationsService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import java.util.Collection;
+import java.util.Set;
 
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/users")
 public class UserController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final UserService service;
     private final RecommendationsService recommendationsService;
 
@@ -31,14 +38,37 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public Collection<UserDto> getFriends(@PathVariable int id) throws NotFoundException {
-        return service.getFriends(id);
+    public ResponseEntity<Collection<UserDto>> getFriends(@PathVariable int id,
+                                                         @RequestParam(required = false) Integer limit,
+                                                         @RequestParam(required = false) Integer after,
+                                                         WebRequest request)
+            throws NotFoundException, CorruptedDataException {
+        if (request.checkNotModified(service.getFriendsTag(id))) {
+            return null;
+        }
+
+        return toResponse(service.getFriends(id, after, limit));
+    }
+
+    @GetMapping("/{id}/friends/count")
+    public int getFriendsCount(@PathVariable int id) throws NotFoundException {
+        return service.getFriendsCount(id);
     }
 
     @GetMapping("/{id}/friends/common/{other-id}")
-    public Collection<UserDto> getMutualFriends(@PathVariable int id, @PathVariable("other-id") int otherId)
-            throws NotFoundException {
-        return service.getMutualFriend(id, otherId);
+    public ResponseEntity<Collection<UserDto>> getMutualFriends(@PathVariable int id,
+                                                                @PathVariable("other-id") int otherId,
+                                                                @RequestParam(required = false) Integer limit,
+                                                                @RequestParam(required = false) Integer after)
+            throws CorruptedDataException {
+        return toResponse(service.getMutualFriends(id, otherId, after, limit));
+    }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public Collection<UserDto> getFriendSuggestions(@PathVariable int id,
+                                                    @RequestParam(required = false, defaultValue = "10") int limit)
+            throws NotFoundException, CorruptedDataException {
+        return service.getFriendSuggestions(id, limit);
     }
 
     @GetMapping("/{id}/feed")
@@ -47,8 +77,10 @@ public class UserController {
     }
 
     @GetMapping("/{id}/recommendations")
-    public Collection<FilmDto> getRecommendations(@PathVariable int id) {
-        return recommendationsService.getRecommendations(id);
+    public Collection<FilmDto> getRecommendations(@PathVariable int id,
+                                                  @RequestParam(required = false) Set<String> fields)
+            throws CorruptedDataException {
+        return recommendationsService.getRecommendations(id, fields);
     }
 
     @PostMapping
@@ -77,4 +109,14 @@ public class UserController {
     public void deleteFriend(@PathVariable int id, @PathVariable("friend-id") int friendId) throws NotFoundException {
         service.deleteFriend(id, friendId);
     }
+
+    private ResponseEntity<Collection<UserDto>> toResponse(UserPageDto page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+
+        return response.body(page.getUsers());
+    }
 }
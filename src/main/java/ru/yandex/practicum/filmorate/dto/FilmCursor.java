@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Позиция последнего отданного фильма для keyset-пагинации.
+ * Хранит все ключи сортировки, чтобы один и тот же курсор подходил для сортировки по id, году и лайкам.
+ */
+public record FilmCursor(int likes, LocalDate releaseDate, int id) {
+    public static final FilmCursor FIRST = new FilmCursor(Integer.MAX_VALUE, LocalDate.of(1, 1, 1), 0);
+
+    public static FilmCursor after(Film film) {
+        //likedUsers могли не загружать из-за fields, счетчик из films есть всегда
+        int likes = film.getLikesCount() != null ? film.getLikesCount() : film.getLikesNumber();
+
+        return new FilmCursor(likes, film.getReleaseDate(), film.getId());
+    }
+
+    public static FilmCursor decode(String cursor) throws CorruptedDataException {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":");
+
+            return new FilmCursor(Integer.parseInt(parts[0]), LocalDate.parse(parts[1]), Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new CorruptedDataException("Некорректный курсор " + cursor);
+        }
+    }
+
+    public String encode() {
+        String raw = likes + ":" + releaseDate + ":" + id;
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
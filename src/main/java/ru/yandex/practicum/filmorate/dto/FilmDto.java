@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.dto;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.Size;
@@ -8,6 +9,7 @@ import lombok.Data;
 import lombok.ToString;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.Rating;
 
 import java.time.LocalDate;
@@ -17,14 +19,21 @@ import java.util.Set;
 @Data
 @Builder
 @ToString
+@JsonFilter(FilmDto.FIELDS_FILTER)
 public class FilmDto {
+    //Фильтр Jackson для параметра fields, без него сериализуются все поля
+    public static final String FIELDS_FILTER = "filmFields";
+    public static final Set<String> FIELDS = Set.of("id", "name", "description", "releaseDate", "duration",
+            "likedUsers", "likesCount", "mpa", "genres", "directors");
+
     private Integer id;
     @NotBlank private String name;
     @Size(max = 200) private String description;
     private LocalDate releaseDate;
     @Positive private Integer duration;
-    private Set<Integer> likedUsers;
+    private IntSet likedUsers;
     private Rating mpa;
     private Set<Genre> genres;
     private LinkedHashSet<Director> directors;
+    private Integer likesCount;
 }
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class FilmImportDto {
+    private int total;
+    private int imported;
+    private int failed;
+    private long elapsedMillis;
+    private double filmsPerSecond;
+    private List<FilmImportItemDto> items;
+}
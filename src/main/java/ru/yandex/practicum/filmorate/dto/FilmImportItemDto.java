@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class FilmImportItemDto {
+    private int index;
+    private Integer id;
+    private String error;
+}
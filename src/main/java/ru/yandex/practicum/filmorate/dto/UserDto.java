@@ -6,10 +6,9 @@ import jakarta.validation.constraints.Past;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.Setter;
+import ru.yandex.practicum.filmorate.model.IntSet;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
 
 
 @Getter
@@ -21,11 +20,11 @@ public class UserDto {
     @NotBlank private String login;
     private String name;
     @Past private LocalDate birthday;
-    private List<Integer> friends;
+    private IntSet friends;
 
-    public List<Integer> getFriends() {
+    public IntSet getFriends() {
         if (friends == null) {
-            return new ArrayList<>();
+            return IntSet.EMPTY;
         } else {
             return friends;
         }
@@ -0,0 +1,60 @@
+package ru.yandex.practicum.filmorate.handler;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+import ru.yandex.practicum.filmorate.dto.FilmDto;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Оставляет в фильмах ответа только поля из параметра fields. Сами имена проверяет FilmService.
+ * Пустой fields, как и в FilmService, означает все поля.
+ */
+@RestControllerAdvice("ru.yandex.practicum.filmorate.controller")
+public class FilmFieldsAdvice extends AbstractMappingJacksonResponseBodyAdvice {
+    public static final String FIELDS_PARAM = "fields";
+
+    @Override
+    protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType,
+                                           MethodParameter returnType, ServerHttpRequest request,
+                                           ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest servletRequest)) {
+            return;
+        }
+
+        String[] values = servletRequest.getServletRequest().getParameterValues(FIELDS_PARAM);
+
+        if (values == null) {
+            return;
+        }
+
+        Set<String> fields = parse(values);
+
+        if (!fields.isEmpty()) {
+            bodyContainer.setFilters(filter(fields));
+        }
+    }
+
+    public static SimpleFilterProvider filter(Set<String> fields) {
+        return new SimpleFilterProvider()
+                .addFilter(FilmDto.FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(fields));
+    }
+
+    private static Set<String> parse(String[] values) {
+        return Arrays.stream(values)
+                .flatMap(value -> Arrays.stream(value.split(",")))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
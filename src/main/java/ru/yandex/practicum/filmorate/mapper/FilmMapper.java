@@ -1,8 +1,12 @@
 package ru.yandex.practicum.filmorate.mapper;
 
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.FilmCacheStatsDto;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmSuggestionDto;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmCacheStats;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
 
 @Component
 public class FilmMapper {
@@ -17,6 +21,24 @@ public class FilmMapper {
                 .genres(film.getGenres())
                 .mpa(film.getRating())
                 .directors(film.getDirectors())
+                .likesCount(film.getLikesCount())
+                .build();
+    }
+
+    public FilmSuggestionDto mapToFilmSuggestionDto(FilmSuggestion suggestion) {
+        return FilmSuggestionDto.builder()
+                .id(suggestion.getId())
+                .name(suggestion.getName())
+                .build();
+    }
+
+    public FilmCacheStatsDto mapToFilmCacheStatsDto(FilmCacheStats stats) {
+        return FilmCacheStatsDto.builder()
+                .size(stats.getSize())
+                .hits(stats.getHits())
+                .misses(stats.getMisses())
+                .evictions(stats.getEvictions())
+                .hitRate(stats.getHitRate())
                 .build();
     }
 
@@ -7,7 +7,6 @@ import lombok.EqualsAndHashCode;
 
 import java.time.LocalDate;
 import java.time.Month;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -20,23 +19,21 @@ public class Film {
     @Size(max = 200) private String description;
     @Past private LocalDate releaseDate;
     @Positive private Integer duration;
-    private Set<Integer> likedUsers;
+    private IntSet likedUsers;
     private Rating rating;
     private Set<Genre> genres;
     public static final LocalDate EARLY_DATE = LocalDate.of(1895, Month.DECEMBER, 28);
     private LinkedHashSet<Director> directors;
+    //Счетчик из films.likes_count, доступен и без загрузки likedUsers
+    private Integer likesCount;
 
     public void addLike(Integer id) {
-        if (likedUsers == null) {
-            likedUsers = new HashSet<>();
-        }
-
-        likedUsers.add(id);
+        likedUsers = likedUsers == null ? IntSet.of(id) : likedUsers.with(id);
     }
 
     public void deleteLike(Integer id) {
         if (likedUsers != null) {
-            likedUsers.remove(id);
+            likedUsers = likedUsers.without(id);
         }
     }
 
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Связанные данные фильма, которые хранилище подгружает отдельными запросами.
+ */
+public enum FilmPart {
+    LIKES,
+    GENRES,
+    DIRECTORS;
+
+    public static final Set<FilmPart> ALL = Collections.unmodifiableSet(EnumSet.allOf(FilmPart.class));
+}
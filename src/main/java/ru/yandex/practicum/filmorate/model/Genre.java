@@ -6,7 +6,7 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @EqualsAndHashCode(of = {"id"})
 public class Genre {
     private Integer id;
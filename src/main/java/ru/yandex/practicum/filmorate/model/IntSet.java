@@ -0,0 +1,259 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.IntConsumer;
+
+/**
+ * Неизменяемое множество id поверх отсортированного int[]: 4 байта на элемент вместо Integer и узла HashMap.
+ * Это обычный Set<Integer>, но contains(int) и обход через forEachInt работают без упаковки.
+ * В JSON пишется и читается как массив чисел напрямую, минуя итератор.
+ */
+@JsonSerialize(using = IntSet.Serializer.class)
+@JsonDeserialize(using = IntSet.Deserializer.class)
+public final class IntSet extends AbstractSet<Integer> {
+    public static final IntSet EMPTY = new IntSet(new int[0]);
+
+    private final int[] values;
+
+    private IntSet(int[] values) {
+        this.values = values;
+    }
+
+    public static IntSet of(int... values) {
+        return sorted(values.clone(), values.length);
+    }
+
+    public static IntSet copyOf(Collection<Integer> values) {
+        if (values instanceof IntSet set) {
+            return set;
+        }
+
+        int[] result = new int[values.size()];
+        int size = 0;
+
+        for (Integer value : values) {
+            result[size++] = value;
+        }
+
+        return sorted(result, size);
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer value && contains(value.intValue());
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    public IntSet with(int value) {
+        int idx = Arrays.binarySearch(values, value);
+
+        if (idx >= 0) {
+            return this;
+        }
+
+        idx = -idx - 1;
+
+        int[] result = new int[values.length + 1];
+
+        System.arraycopy(values, 0, result, 0, idx);
+        result[idx] = value;
+        System.arraycopy(values, idx, result, idx + 1, values.length - idx);
+
+        return new IntSet(result);
+    }
+
+    public IntSet without(int value) {
+        int idx = Arrays.binarySearch(values, value);
+
+        if (idx < 0) {
+            return this;
+        }
+        if (values.length == 1) {
+            return EMPTY;
+        }
+
+        int[] result = new int[values.length - 1];
+
+        System.arraycopy(values, 0, result, 0, idx);
+        System.arraycopy(values, idx + 1, result, idx, values.length - idx - 1);
+
+        return new IntSet(result);
+    }
+
+    //Слияние двух отсортированных массивов за O(n + m)
+    public IntSet intersect(IntSet other) {
+        return merge(other, 0, 0, Integer.MAX_VALUE);
+    }
+
+    //Не больше limit общих значений, больших after: слияние начинается с бинарного поиска и обрывается на limit
+    public IntSet intersect(IntSet other, int after, int limit) {
+        return merge(other, startAfter(after), other.startAfter(after), limit);
+    }
+
+    //Не больше limit значений, больших after, без обхода остальных
+    public IntSet page(int after, int limit) {
+        int from = startAfter(after);
+        int to = from + Math.min(limit, values.length - from);
+
+        if (from == 0 && to == values.length) {
+            return this;
+        }
+
+        return from == to ? EMPTY : new IntSet(Arrays.copyOfRange(values, from, to));
+    }
+
+    public int[] toIntArray() {
+        return values.clone();
+    }
+
+    public void forEachInt(IntConsumer action) {
+        for (int value : values) {
+            action.accept(value);
+        }
+    }
+
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new PrimitiveIterator.OfInt() {
+            private int idx;
+
+            @Override
+            public boolean hasNext() {
+                return idx < values.length;
+            }
+
+            @Override
+            public int nextInt() {
+                if (idx >= values.length) {
+                    throw new NoSuchElementException();
+                }
+
+                return values[idx++];
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IntSet other) {
+            return Arrays.equals(values, other.values);
+        }
+
+        return super.equals(o);
+    }
+
+    //Сумма значений, как требует контракт Set.hashCode для Integer
+    @Override
+    public int hashCode() {
+        int hash = 0;
+
+        for (int value : values) {
+            hash += value;
+        }
+
+        return hash;
+    }
+
+    private IntSet merge(IntSet other, int i, int j, int limit) {
+        int[] result = new int[Math.min(limit, Math.min(values.length - i, other.values.length - j))];
+        int size = 0;
+
+        while (i < values.length && j < other.values.length && size < result.length) {
+            if (values[i] < other.values[j]) {
+                i++;
+            } else if (values[i] > other.values[j]) {
+                j++;
+            } else {
+                result[size++] = values[i];
+                i++;
+                j++;
+            }
+        }
+
+        return size == 0 ? EMPTY : new IntSet(size == result.length ? result : Arrays.copyOf(result, size));
+    }
+
+    private int startAfter(int after) {
+        int idx = Arrays.binarySearch(values, after);
+
+        return idx >= 0 ? idx + 1 : -idx - 1;
+    }
+
+    private static IntSet sorted(int[] values, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+
+        Arrays.sort(values, 0, size);
+
+        int distinct = 1;
+
+        for (int i = 1; i < size; i++) {
+            if (values[i] != values[distinct - 1]) {
+                values[distinct++] = values[i];
+            }
+        }
+
+        return new IntSet(distinct == values.length ? values : Arrays.copyOf(values, distinct));
+    }
+
+    public static class Serializer extends JsonSerializer<IntSet> {
+        @Override
+        public void serialize(IntSet set, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeArray(set.values, 0, set.values.length);
+        }
+    }
+
+    public static class Deserializer extends JsonDeserializer<IntSet> {
+        @Override
+        public IntSet deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (!p.isExpectedStartArrayToken()) {
+                return (IntSet) ctxt.handleUnexpectedToken(IntSet.class, p);
+            }
+
+            int[] values = new int[8];
+            int size = 0;
+
+            for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+                if (token != JsonToken.VALUE_NUMBER_INT) {
+                    return (IntSet) ctxt.handleUnexpectedToken(IntSet.class, p);
+                }
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+
+                values[size++] = p.getIntValue();
+            }
+
+            return sorted(values, size);
+        }
+
+        @Override
+        public IntSet getEmptyValue(DeserializationContext ctxt) {
+            return EMPTY;
+        }
+    }
+}
@@ -8,10 +8,6 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
 
 @Data
 @Builder
@@ -22,31 +18,29 @@ public class User {
     @NotBlank private String login;
     private String name;
     @Past private LocalDate birthday;
-    private Map<Integer, Boolean> friends;
+    private IntSet friends;
+    //Неподтвержденные заявки, подмножество friends
+    private IntSet unconfirmed;
 
     public void addFriend(User user, boolean confirmed) {
-        if (friends == null) {
-            friends = new HashMap<>();
-        }
-
-        friends.put(user.getId(), confirmed);
+        friends = getFriends().with(user.getId());
+        unconfirmed = confirmed ? getUnconfirmed().without(user.getId()) : getUnconfirmed().with(user.getId());
     }
 
     public void deleteFriend(User user) {
-        if (friends != null) {
-            friends.remove(user.getId());
-        }
+        friends = getFriends().without(user.getId());
+        unconfirmed = getUnconfirmed().without(user.getId());
     }
 
-    public Set<Integer> getFriends() {
-        if (friends == null) {
-            return new HashSet<>();
-        }
+    public IntSet getFriends() {
+        return friends == null ? IntSet.EMPTY : friends;
+    }
 
-        return friends.keySet();
+    public IntSet getUnconfirmed() {
+        return unconfirmed == null ? IntSet.EMPTY : unconfirmed;
     }
 
     public boolean isFriendConfirm(Integer friendId) {
-        return friends.get(friendId);
+        return getFriends().contains(friendId.intValue()) && !getUnconfirmed().contains(friendId.intValue());
     }
 }
@@ -1,24 +1,31 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.dto.FilmCacheStatsDto;
+import ru.yandex.practicum.filmorate.dto.FilmCursor;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportItemDto;
+import ru.yandex.practicum.filmorate.dto.FilmPageDto;
+import ru.yandex.practicum.filmorate.dto.FilmSuggestionDto;
 import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.FilmPart;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.dao.DirectorDbStorage;
-import ru.yandex.practicum.filmorate.storage.dao.GenreDbStorage;
-import ru.yandex.practicum.filmorate.storage.dao.RatingDbStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,23 +36,152 @@ public class FilmService {
     private final UserStorage userStorage;
     private final FilmMapper mapper;
     private final DirectorDbStorage directorStorage;
-    private final RatingDbStorage ratingStorage;
-    private final GenreDbStorage genreStorage;
+    private final Validator validator;
 
-    public Collection<FilmDto> getFilms() throws NotFoundException {
-        return storage.getFilms().stream().map(mapper::mapToFilmDto).collect(Collectors.toList());
+    @Value("${filmorate.export.chunk-size:500}")
+    private int exportChunkSize;
+
+    @Value("${filmorate.import.chunk-size:1000}")
+    private int importChunkSize;
+
+    //Страница без limit; и она, и явный limit не больше max-page-size
+    @Value("${filmorate.pagination.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${filmorate.pagination.max-page-size:1000}")
+    private int maxPageSize;
+
+    public FilmPageDto getFilms(String after, Integer limit, Set<String> fields) throws CorruptedDataException {
+        int pageSize = pageSize(limit);
+        List<Film> films = storage.getFilms(FilmCursor.decode(after), pageSize, parts(fields));
+
+        return FilmPageDto.builder()
+                .films(films.stream().map(mapper::mapToFilmDto).collect(Collectors.toList()))
+                .nextCursor(nextCursor(films, pageSize))
+                .build();
     }
 
-    public FilmDto getFilm(int id) throws NotFoundException {
+    public void exportFilms(Set<FilmPart> parts, Consumer<FilmDto> consumer) {
+        log.info("Выгружаем каталог фильмов порциями по {}", exportChunkSize);
+
+        storage.exportFilms(exportChunkSize, parts, films -> films.stream()
+                .map(mapper::mapToFilmDto)
+                .forEach(consumer));
+    }
+
+    /**
+     * Импортирует фильмы из потока порциями по importChunkSize, каждая порция пишется своей транзакцией.
+     * Если поток оборвался или содержит невалидный JSON, уже прочитанное сохраняется, а ошибка
+     * записывается на элемент, на котором чтение остановилось.
+     */
+    public FilmImportDto importFilms(Iterator<FilmDto> source) {
+        long start = System.nanoTime();
+        List<FilmImportItemDto> items = new ArrayList<>();
+        List<Film> chunk = new ArrayList<>();
+        List<FilmImportItemDto> chunkItems = new ArrayList<>();
+
+        log.info("Импортируем фильмы порциями по {}", importChunkSize);
+
+        while (true) {
+            FilmDto dto;
+
+            try {
+                if (!source.hasNext()) {
+                    break;
+                }
+
+                dto = source.next();
+            } catch (RuntimeException e) {
+                log.warn("Импорт прерван на элементе {}: {}", items.size(), e.getMessage());
+                items.add(FilmImportItemDto.builder().index(items.size()).error(e.getMessage()).build());
+                break;
+            }
+
+            FilmImportItemDto item = FilmImportItemDto.builder().index(items.size()).build();
+            String violations = validator.validate(dto).stream()
+                    .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                    .collect(Collectors.joining(", "));
+
+            items.add(item);
+
+            if (!violations.isEmpty()) {
+                item.setError(violations);
+                continue;
+            }
+
+            chunk.add(mapper.mapToFilm(dto));
+            chunkItems.add(item);
+
+            if (chunk.size() >= importChunkSize) {
+                flushImport(chunk, chunkItems);
+            }
+        }
+
+        flushImport(chunk, chunkItems);
+
+        long elapsed = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        int imported = (int) items.stream().filter(item -> item.getId() != null).count();
+
+        log.info("Импортировано {} фильмов из {} за {} мс", imported, items.size(), elapsed);
+
+        return FilmImportDto.builder()
+                .total(items.size())
+                .imported(imported)
+                .failed(items.size() - imported)
+                .elapsedMillis(elapsed)
+                .filmsPerSecond(imported * 1000.0 / elapsed)
+                .items(items)
+                .build();
+    }
+
+    private void flushImport(List<Film> chunk, List<FilmImportItemDto> chunkItems) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<String> errors = storage.addFilms(chunk);
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (errors.get(i) == null) {
+                chunkItems.get(i).setId(chunk.get(i).getId());
+            } else {
+                chunkItems.get(i).setError(errors.get(i));
+            }
+        }
 
+        chunk.clear();
+        chunkItems.clear();
+    }
+
+    //Версия есть и у несуществующего id, поэтому без проверки If-None-Match ответил бы 304 вместо 404
+    public String getFilmTag(int id) throws NotFoundException {
+        if (!storage.contains(id)) {
+            log.warn("Не удалось получить фильм {}", id);
+            throw new NotFoundException("Фильм " + id + " не найден");
+        }
+
+        return storage.getFilmTag(id);
+    }
+
+    public FilmDto getFilm(int id, Set<String> fields) throws NotFoundException, CorruptedDataException {
+        //Фильм целиком берется из кэша, поэтому fields здесь только проверяем, а лишнее срежет сериализация
+        validateFields(fields);
+
+        return getFilm(id);
+    }
+
+    public FilmDto getFilm(int id) throws NotFoundException {
         return mapper.mapToFilmDto(storage.getFilm(id));
     }
 
-    public void addFilm(FilmDto film) throws CorruptedDataException, NotFoundException, DuplicatedDataException {
-        int id = storage.addFilm(mapper.mapToFilm(film));
+    public FilmDto addFilm(FilmDto film) throws CorruptedDataException, NotFoundException, DuplicatedDataException {
+        Film created = mapper.mapToFilm(film);
+        int id = storage.addFilm(created);
 
         log.info("Успешно добавлен новый фильм {}", id);
-        film.setId(id);
+
+        //Хранилище уже дополнило фильм названиями, перечитывать его не нужно
+        return mapper.mapToFilmDto(created);
     }
 
     public FilmDto updateFilm(FilmDto film) throws NotFoundException, CorruptedDataException, DuplicatedDataException {
@@ -77,6 +213,10 @@ public class FilmService {
             log.warn("Не удалось добавить лайк фильму {}", film);
             throw new NotFoundException("Пользователь " + likedUser + " не найден");
         }
+        if (!storage.contains(film)) {
+            log.warn("Не удалось добавить лайк фильму {}", film);
+            throw new NotFoundException("Фильм " + film + " не найден");
+        }
         storage.addLike(likedUser, film);
         log.info("Лайк пользоватля {} успешно добавлен фильму {}", likedUser, film);
     }
@@ -90,63 +230,72 @@ public class FilmService {
             log.warn("Не удалось удалить лайк у фильма {}", film);
             throw new NotFoundException("Пользователь " + unlikedUser + " не найден");
         }
+        if (!storage.contains(film)) {
+            log.warn("Не удалось удалить лайк у фильма {}", film);
+            throw new NotFoundException("Фильм " + film + " не найден");
+        }
         storage.deleteLike(unlikedUser, film);
         log.info("Лайк пользоватля {} успешно удалён у фильма {}", unlikedUser, film);
     }
 
-    public List<FilmDto> getMostPopular(int count, Integer genreId, Integer year) {
-        return storage.getMostPopular(count, genreId, year).stream().map(mapper::mapToFilmDto).collect(Collectors.toList());
+    //Счётчики лайков ведутся при каждом лайке, а раз в сутки сверяем их с liked_user
+    @Scheduled(cron = "${filmorate.likes.recount-cron:0 0 4 * * *}")
+    public void recountLikes() {
+        log.info("Пересчитываем счётчики лайков");
+        storage.recountLikes();
     }
 
+    public List<FilmDto> getMostPopular(int count, Integer genreId, Integer year, Integer fromYear, Integer toYear,
+                                        Set<String> fields)
+            throws CorruptedDataException {
+        if (count <= 0) {
+            throw new CorruptedDataException("Количество фильмов должно быть положительным: " + count);
+        }
+
+        if (year != null) {
+            fromYear = year;
+            toYear = year;
+        }
+
+        if (fromYear != null && toYear != null && fromYear > toYear) {
+            throw new CorruptedDataException("Начало периода " + fromYear + " позже его конца " + toYear);
+        }
 
-    public Collection<FilmDto> findDirectorFilms(int directorId, String sortConditions) throws NotFoundException {
+        return storage.getMostPopular(count, genreId, fromYear, toYear, parts(fields)).stream()
+                .map(mapper::mapToFilmDto)
+                .collect(Collectors.toList());
+    }
+
+
+    public FilmPageDto findDirectorFilms(int directorId, String sortConditions, String after, Integer limit,
+                                         Set<String> fields) throws NotFoundException, CorruptedDataException {
+        Set<FilmPart> parts = parts(fields);
         Director director = directorStorage.findDirector(directorId);
         String message = String.format("Получаем список фильмов режиссера %s", director.getName());
+        FilmCursor cursor = FilmCursor.decode(after);
+        int pageSize = pageSize(limit);
 
-        Collection<Film> films;
+        List<Film> films;
         if (sortConditions.equals("year")) {
             log.info(message + " по году выпуска");
-            films = storage.findDirectorFilmsOrderYear(directorId);
+            films = storage.findDirectorFilmsOrderYear(directorId, cursor, pageSize, parts);
         } else if (sortConditions.equals("likes")) {
             log.info(message + " по количеству лайков");
-            films = storage.findDirectorFilmsOrderLikes(directorId);
+            films = storage.findDirectorFilmsOrderLikes(directorId, cursor, pageSize, parts);
         } else {
             log.info("Условия сортировки не заданы. " + message);
-            films = storage.findDirectorFilms(directorId);
+            films = storage.findDirectorFilms(directorId, cursor, pageSize, parts);
         }
 
-        List<FilmDto> collect = new ArrayList<>();
-        for (Film film : films) {
-            FilmDto filmDto = fillFilmData(film);
-            collect.add(filmDto);
-        }
-        return collect;
-    }
-
-    private FilmDto fillFilmData(Film film) throws NotFoundException {
-        log.debug("Ищем жанры фильма {}", film.getName());
-        LinkedHashSet<Genre> genres = new LinkedHashSet<>(genreStorage.getGenreObjectByFilm(film.getId()));
-
-        log.debug("Ищем режиссеров фильма {}", film.getName());
-        LinkedHashSet<Director> directors = new LinkedHashSet<>(directorStorage.findObjectByFilm(film.getId()));
-
-        log.debug("Ищем лайки фильма {}", film.getName());
-        LinkedHashSet<Integer> likes = storage.getLikes(film.getId());
-
-        log.debug("Ищем рейтинг фильма {}", film.getName());
-        Rating mpa = ratingStorage.getRating(ratingStorage.findRatingIdByFilmId(film.getId()));
-
-        log.debug("Фильм {} найден!", film.getName());
-
-        film.setRating(mpa);
-        film.setGenres(genres);
-        film.setLikedUsers(likes);
-        film.setDirectors(directors);
-        return mapper.mapToFilmDto(film);
+        return FilmPageDto.builder()
+                .films(films.stream().map(mapper::mapToFilmDto).toList())
+                .nextCursor(nextCursor(films, pageSize))
+                .build();
     }
 
-    public Collection<FilmDto> getCommonFilms(int userId, int friendId) {
-        var result = storage.getCommonFilms(userId, friendId)
+    public Collection<FilmDto> getCommonFilms(int userId, int friendId, Set<String> fields)
+            throws CorruptedDataException {
+        var result = storage.getCommonFilms(userId, friendId, parts(fields))
                 .stream()
                 .map(mapper::mapToFilmDto)
                 .collect(Collectors.toList());
@@ -160,25 +309,87 @@ public class FilmService {
         return result;
     }
 
-    public Collection<FilmDto> search(String query, String by) {
-        List<Film> result = new ArrayList<>();
+    public FilmPageDto search(String query, String by, String after, Integer limit, Set<String> fields)
+            throws CorruptedDataException {
+        int pageSize = pageSize(limit);
+        List<Film> films = storage.search(query,
+                by.contains("title"),
+                by.contains("director"),
+                FilmCursor.decode(after),
+                pageSize,
+                parts(fields));
+
+        return FilmPageDto.builder()
+                .films(films.stream().map(mapper::mapToFilmDto).collect(Collectors.toList()))
+                .nextCursor(nextCursor(films, pageSize))
+                .build();
+    }
+
+    public List<FilmSuggestionDto> suggest(String prefix, int limit) throws CorruptedDataException {
+        if (limit <= 0) {
+            throw new CorruptedDataException("Количество подсказок должно быть положительным, получено " + limit);
+        }
+
+        return storage.suggest(prefix, limit).stream().map(mapper::mapToFilmSuggestionDto).collect(Collectors.toList());
+    }
+
+    public FilmCacheStatsDto getCacheStats() {
+        return mapper.mapToFilmCacheStatsDto(storage.getCacheStats());
+    }
+
+    /**
+     * Проверяет имена полей из параметра fields, когда связанные данные все равно берутся целиком.
+     */
+    public static void validateFields(Set<String> fields) throws CorruptedDataException {
+        parts(fields);
+    }
 
-        if (by.contains("director")) {
-            result.addAll(storage.searchByDirector(query));
+    /**
+     * Какие связанные данные нужны для полей из параметра fields. Без параметра или с пустым нужны все.
+     */
+    public static Set<FilmPart> parts(Set<String> fields) throws CorruptedDataException {
+        if (fields == null || fields.isEmpty()) {
+            return FilmPart.ALL;
         }
-        if (by.contains("title")) {
-            result.addAll(storage.searchByTitle(query));
+
+        for (String field : fields) {
+            if (!FilmDto.FIELDS.contains(field)) {
+                throw new CorruptedDataException("Неизвестное поле фильма " + field);
+            }
         }
 
-        return result.stream()
-                .sorted((e1, e2) -> {
-                    if (e1.getLikesNumber() != e2.getLikesNumber()) {
-                        return e2.getLikesNumber() - e1.getLikesNumber();
-                    } else {
-                        return e1.getId() - e2.getId();
-                    }
-                })
-                .map(mapper::mapToFilmDto)
-                .collect(Collectors.toList());
+        Set<FilmPart> parts = EnumSet.noneOf(FilmPart.class);
+
+        if (fields.contains("likedUsers")) {
+            parts.add(FilmPart.LIKES);
+        }
+        if (fields.contains("genres")) {
+            parts.add(FilmPart.GENRES);
+        }
+        if (fields.contains("directors")) {
+            parts.add(FilmPart.DIRECTORS);
+        }
+
+        return parts;
+    }
+
+    private int pageSize(Integer limit) throws CorruptedDataException {
+        if (limit == null) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+
+        if (limit <= 0) {
+            throw new CorruptedDataException("Размер страницы должен быть положительным, получено " + limit);
+        }
+
+        return Math.min(limit, maxPageSize);
+    }
+
+    private String nextCursor(List<Film> films, int pageSize) {
+        if (films.size() < pageSize) {
+            return null;
+        }
+
+        return FilmCursor.after(films.getLast()).encode();
     }
 }
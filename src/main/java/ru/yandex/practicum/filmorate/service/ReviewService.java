@@ -13,6 +13,7 @@ import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.Collection;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -66,7 +67,8 @@ public class ReviewService {
 
         var id = storage.addReview(reviewMapper.mapToReview(reviewDto));
 
-        var result = reviewMapper.mapToReviewDto(storage.getReview(id));
+        //Ответ собираем из запроса и нового id, у свежего отзыва полезность нулевая
+        var result = reviewDto.toBuilder().reviewId(id).useful(0).build();
 
         log.info("Успешно добавлен новый отзыв \"{}\"", result);
 
@@ -87,7 +89,10 @@ public class ReviewService {
 
         storage.updateReview(reviewMapper.mapToReview(reviewDto));
 
-        var result = reviewMapper.mapToReviewDto(storage.getReview(id));
+        var result = reviewMapper.mapToReviewDto(oldReview.toBuilder()
+                .content(reviewDto.getContent())
+                .isPositive(reviewDto.getIsPositive())
+                .build());
 
         log.info("Success to update review \"{}\"", result);
 
@@ -113,54 +118,49 @@ public class ReviewService {
         return result;
     }
 
-    public void addLike(int reviewId, int userid, int useful) throws NotFoundException {
+    public ReviewDto addLike(int reviewId, int userid, int useful) throws NotFoundException {
         log.trace("Request to add like to reviewId \"{}\" from userId \"{}\" as useful \"{}\"",
                         reviewId,
                         userid,
                         useful);
 
-        if (!storage.containsReview(reviewId)) {
-            log.warn("Не удалось найти отзыв {}", reviewId);
-            throw new NotFoundException(String.format("Отзыв \"%d\" не найден", reviewId));
-        }
+        //Отзыв читаем до записи: он же пойдет в ответ с новым значением счетчика
+        Review review = storage.getReview(reviewId);
 
         if (!userStorage.contains(userid)) {
             log.warn("Не удалось найти пользователя {}", userid);
             throw new NotFoundException(String.format("Пользователь \"%d\" не найден", userid));
         }
 
-        if (storage.containsReviewLike(reviewId, userid)) {
-            storage.updateReviewLike(reviewId, userid, useful);
-        } else {
-            storage.addReviewLike(reviewId, userid, useful);
-        }
+        int total = storage.addReviewLike(reviewId, userid, useful);
 
         log.info("Success to add like to reviewId \"{}\" from userId \"{}\" as useful \"{}\"",
                 reviewId,
                 userid,
                 useful);
+
+        return reviewMapper.mapToReviewDto(review.toBuilder().useful(total).build());
     }
 
-    public void deleteLike(int reviewId, int userid) throws NotFoundException {
+    public ReviewDto deleteLike(int reviewId, int userid) throws NotFoundException {
         log.info("Request to delete like to reviewId \"{}\" from userId \"{}\"", reviewId, userid);
 
-        if (!storage.containsReview(reviewId)) {
-            log.warn("Не удалось найти отзыв {}", reviewId);
-            throw new NotFoundException(String.format("Отзыв \"%d\" не найден", reviewId));
-        }
+        Review review = storage.getReview(reviewId);
 
         if (!userStorage.contains(userid)) {
             log.warn("Не удалось найти пользователя {}", userid);
             throw new NotFoundException(String.format("Пользователь \"%d\" не найден", userid));
         }
 
-        if (!storage.containsReviewLike(reviewId, userid)) {
+        Optional<Integer> total = storage.deleteReviewLike(reviewId, userid);
+
+        if (total.isEmpty()) {
             log.warn("Не удалось найти лайк/дизлайк пользователя {} для отзыва {}", userid, reviewId);
             throw new NotFoundException(String.format("Пользователь \"%d\" не найден среди лайка/дизлайка для отзыва %d", userid, reviewId));
         }
 
-        storage.deleteReviewLike(reviewId, userid);
-
         log.info("Success to delete like to reviewId \"{}\" from userId \"{}\"", reviewId, userid);
+
+        return reviewMapper.mapToReviewDto(review.toBuilder().useful(total.get()).build());
     }
 }
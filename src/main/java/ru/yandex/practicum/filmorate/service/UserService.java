@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.dto.FeedDto;
 import ru.yandex.practicum.filmorate.dto.UserDto;
+import ru.yandex.practicum.filmorate.dto.UserPageDto;
+import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mapper.FeedMapper;
@@ -15,7 +18,7 @@ import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.Set;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,30 +28,58 @@ public class UserService {
     private final UserStorage storage;
     private final UserMapper mapper;
 
+    //Страница без limit; и она, и явный limit не больше max-page-size
+    @Value("${filmorate.pagination.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${filmorate.pagination.max-page-size:1000}")
+    private int maxPageSize;
+
     public Collection<UserDto> getUsers() {
         return storage.getUsers().stream().map(mapper::mapToUserDto).collect(Collectors.toList());
     }
 
     public UserDto getUser(Integer id) throws NotFoundException {
-        if (storage.contains(id)) {
-            return mapper.mapToUserDto(storage.getUser(id));
-        } else {
-            log.warn("Не удалось получить пользователя {}", id);
+        User user = findUser(id, "Не удалось получить пользователя {}");
+
+        user.setFriends(storage.getFriendIds(id));
+
+        return mapper.mapToUserDto(user);
+    }
+
+    //Версия есть и у несуществующего id, поэтому без проверки If-None-Match ответил бы 304 вместо 404
+    public String getFriendsTag(int id) throws NotFoundException {
+        if (!storage.contains(id)) {
+            log.warn("Не удалось получить друзей пользователя {}", id);
             throw new NotFoundException("Пользователь " + id + " не найден");
         }
+
+        return storage.getFriendsTag(id);
     }
 
-    public Collection<UserDto> getFriends(Integer id) throws NotFoundException {
+    public UserPageDto getFriends(Integer id, Integer after, Integer limit) throws NotFoundException,
+            CorruptedDataException {
+        int pageSize = pageSize(limit);
+
         if (!storage.contains(id)) {
             log.warn("Не удалось получить друзей пользователя {}", id);
             throw new NotFoundException("Пользователь " + id + " не найден");
         }
 
-        var friends = storage.getFriends(id);
+        var friends = storage.getFriends(id, after(after), pageSize);
 
         log.info("Для пользователя {} вернул {} друзей", id, friends.size());
 
-        return friends.stream().map(mapper::mapToUserDto).collect(Collectors.toList());
+        return toPage(friends, pageSize);
+    }
+
+    public int getFriendsCount(Integer id) throws NotFoundException {
+        if (!storage.contains(id)) {
+            log.warn("Не удалось посчитать друзей пользователя {}", id);
+            throw new NotFoundException("Пользователь " + id + " не найден");
+        }
+
+        return storage.getFriendsCount(id);
     }
 
     public void addUser(UserDto user) throws DuplicatedDataException, NotFoundException {
@@ -61,25 +92,17 @@ public class UserService {
     }
 
     public Collection<UserDto> addFriend(Integer sender, Integer recipient) throws NotFoundException {
-        if (!storage.contains(sender)) {
-            log.warn("Не удалось отправить заявку пользователя {}", sender);
-            throw new NotFoundException("Пользователь " + sender + " не найден");
-        }
-        if (!storage.contains(recipient)) {
-            log.warn("Не удалось отправить заявку пользователю {}", recipient);
-            throw new NotFoundException("Пользователь " + recipient + " не найден");
-        }
-
-        var friends = storage.getFriends(sender);
-
-        User senderUser = storage.getUser(sender);
-        User recipientUser = storage.getUser(recipient);
-
-        if (!friends.contains(recipient)) {
+        User senderUser = findUser(sender, "Не удалось отправить заявку пользователя {}");
+        User recipientUser = findUser(recipient, "Не удалось отправить заявку пользователю {}");
 
+        //Повторная заявка ничего не меняет, проверяем одно ребро вместо загрузки всех друзей
+        if (!storage.isFriend(sender, recipient)) {
             storage.addFriend(recipientUser, senderUser, false);
         }
 
+        senderUser.setFriends(storage.getFriendIds(sender));
+        recipientUser.setFriends(storage.getFriendIds(recipient));
+
         log.info("Для пользователя {} добавлен друг {} ", sender, recipient);
 
         return List.of(mapper.mapToUserDto(senderUser),
@@ -87,50 +110,43 @@ public class UserService {
     }
 
     public UserDto updateUser(UserDto user) throws NotFoundException, DuplicatedDataException {
-        if (storage.contains(user.getId())) {
-            User oldUser = storage.getUser(user.getId());
-            if (user.getEmail() != null) {
-                for (User user1 : storage.getUsers()) {
-                    if (StringUtils.equals(user.getEmail(), user1.getEmail())) {
-                        log.warn("Не удалось обновить пользователя {}", user.getId());
-                        throw new DuplicatedDataException("Этот email уже используется");
-                    }
-                }
-                oldUser.setEmail(user.getEmail());
-            }
+        User oldUser = findUser(user.getId(), "Не удалось обновить пользователя {}");
 
-            if (user.getBirthday() != null) {
-                oldUser.setBirthday(user.getBirthday());
+        if (user.getEmail() != null) {
+            if (storage.isEmailTaken(user.getEmail(), user.getId())) {
+                log.warn("Не удалось обновить пользователя {}", user.getId());
+                throw new DuplicatedDataException("Этот email уже используется");
             }
+            oldUser.setEmail(user.getEmail());
+        }
+
+        if (user.getBirthday() != null) {
+            oldUser.setBirthday(user.getBirthday());
+        }
 
-            if (user.getName() != null) {
-                if (!user.getName().isBlank()) {
-                    oldUser.setName(user.getName());
-                } else {
-                    oldUser.setName(user.getLogin());
-                }
-            } else if (StringUtils.equals(oldUser.getLogin(), oldUser.getName())) {
+        if (user.getName() != null) {
+            if (!user.getName().isBlank()) {
+                oldUser.setName(user.getName());
+            } else {
                 oldUser.setName(user.getLogin());
             }
+        } else if (StringUtils.equals(oldUser.getLogin(), oldUser.getName())) {
+            oldUser.setName(user.getLogin());
+        }
 
-            if (user.getLogin() != null) {
-                for (User user1 : storage.getUsers()) {
-                    if (StringUtils.equals(user.getLogin(), user1.getLogin())) {
-                        log.warn("Не удалось обновить пользователя {}", user.getId());
-                        throw new DuplicatedDataException("Логин " + user.getLogin() + " уже используется");
-                    }
-                }
-                oldUser.setLogin(user.getLogin());
+        if (user.getLogin() != null) {
+            if (storage.isLoginTaken(user.getLogin(), user.getId())) {
+                log.warn("Не удалось обновить пользователя {}", user.getId());
+                throw new DuplicatedDataException("Логин " + user.getLogin() + " уже используется");
             }
+            oldUser.setLogin(user.getLogin());
+        }
 
-            storage.updateUser(oldUser);
+        storage.updateUser(oldUser);
+        oldUser.setFriends(storage.getFriendIds(oldUser.getId()));
 
-            log.info("Пользователь " + user.getId() + " успешно обновлён");
-            return mapper.mapToUserDto(oldUser);
-        } else {
-            log.warn("Не удалось обновить пользователя {}", user.getId());
-            throw new NotFoundException("Пользователь " + user.getId() + " не найден");
-        }
+        log.info("Пользователь " + user.getId() + " успешно обновлён");
+        return mapper.mapToUserDto(oldUser);
     }
 
     public void deleteUser(Integer userId) {
@@ -150,12 +166,31 @@ public class UserService {
         log.info("Для пользователя {} удален друг {} ", sender, recipient);
     }
 
-    public Set<UserDto> getMutualFriend(Integer user1, Integer user2) throws NotFoundException {
-        var friends = storage.getMutualFriend(user1, user2);
+    public List<UserDto> getFriendSuggestions(Integer id, int limit) throws NotFoundException,
+            CorruptedDataException {
+        if (limit <= 0) {
+            throw new CorruptedDataException("Количество подсказок должно быть положительным, получено " + limit);
+        }
+        if (!storage.contains(id)) {
+            log.warn("Не удалось подобрать знакомых пользователю {}", id);
+            throw new NotFoundException("Пользователь " + id + " не найден");
+        }
+
+        var suggestions = storage.getFriendSuggestions(id, limit);
+
+        log.info("Для пользователя {} подобрано {} возможных знакомых", id, suggestions.size());
+
+        return suggestions.stream().map(mapper::mapToUserDto).collect(Collectors.toList());
+    }
+
+    public UserPageDto getMutualFriends(Integer user1, Integer user2, Integer after, Integer limit)
+            throws CorruptedDataException {
+        int pageSize = pageSize(limit);
+        var friends = storage.getMutualFriends(user1, user2, after(after), pageSize);
 
         log.info("Для пользователей {}, {} вернул {} друзей", user1, user2, friends.size());
 
-        return friends.stream().map(mapper::mapToUserDto).collect(Collectors.toSet());
+        return toPage(friends, pageSize);
     }
 
     public Collection<FeedDto> getFeeds(int userId) throws NotFoundException {
@@ -171,4 +206,40 @@ public class UserService {
                 .map(FeedMapper::mapToFeedDto)
                 .toList();
     }
+
+    //Друзья отдаются по возрастанию id, курсор - id последнего отданного
+    private UserPageDto toPage(List<User> users, int pageSize) {
+        return UserPageDto.builder()
+                .users(users.stream().map(mapper::mapToUserDto).collect(Collectors.toList()))
+                .nextCursor(users.size() < pageSize ? null : users.getLast().getId())
+                .build();
+    }
+
+    private static int after(Integer after) {
+        return after == null ? 0 : after;
+    }
+
+    private int pageSize(Integer limit) throws CorruptedDataException {
+        if (limit == null) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+
+        if (limit <= 0) {
+            throw new CorruptedDataException("Размер страницы должен быть положительным, получено " + limit);
+        }
+
+        return Math.min(limit, maxPageSize);
+    }
+
+    //Только строка пользователя, без друзей: где они нужны, их id берутся отдельно через getFriendIds
+    private User findUser(Integer id, String warning) throws NotFoundException {
+        Optional<User> user = id == null ? Optional.empty() : storage.findUser(id);
+
+        if (user.isEmpty()) {
+            log.warn(warning, id);
+            throw new NotFoundException("Пользователь " + id + " не найден");
+        }
+
+        return user.get();
+    }
 }
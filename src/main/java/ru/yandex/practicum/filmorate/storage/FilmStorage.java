@@ -1,24 +1,43 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import ru.yandex.practicum.filmorate.dto.FilmCursor;
 import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmCacheStats;
+import ru.yandex.practicum.filmorate.model.FilmPart;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.Review;
 
 import java.util.Collection;
-import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Collection<Film> getFilms() throws NotFoundException;
 
+    List<Film> getFilms(FilmCursor after, int limit, Set<FilmPart> parts);
+
+    void exportFilms(int chunkSize, Set<FilmPart> parts, Consumer<List<Film>> consumer);
+
     Film getFilm(Integer id) throws NotFoundException;
 
     List<Film> getMostPopular(int count, Integer genreId, Integer year);
 
+    List<Film> getMostPopular(int count, Integer genreId, Integer fromYear, Integer toYear, Set<FilmPart> parts);
+
     Integer addFilm(Film film) throws CorruptedDataException, NotFoundException, DuplicatedDataException;
 
+    /**
+     * Добавляет фильмы одной транзакцией и проставляет им id.
+     * Возвращает для каждого фильма текст ошибки проверки или null, если фильм сохранен.
+     */
+    List<String> addFilms(List<Film> films);
+
     void updateFilm(Film film) throws CorruptedDataException, DuplicatedDataException;
 
     void deleteFilm(Integer id);
@@ -27,6 +46,8 @@ public interface FilmStorage {
 
     void deleteLike(int unlikedUser, int film) throws NotFoundException;
 
+    void recountLikes();
+
     boolean contains(Integer id);
 
     Review getReview(int reviewId) throws NotFoundException;
@@ -41,33 +62,36 @@ public interface FilmStorage {
 
     void deleteReview(int id) throws NotFoundException;
 
-    void addReviewLike(int reviewId, int userid, int useful);
+    int addReviewLike(int reviewId, int userid, int useful);
 
-    boolean containsReviewLike(int reviewId, int userid);
-
-    void deleteReviewLike(int reviewId, int userid);
+    Optional<Integer> deleteReviewLike(int reviewId, int userid);
 
     List<Review> getReviews(int limit);
 
-    void updateReviewLike(int reviewId, int userid, int useful);
-
-    List<Film> findDirectorFilmsOrderYear(int directorId);
+    List<Film> findDirectorFilmsOrderYear(int directorId, FilmCursor after, int limit, Set<FilmPart> parts);
 
-    List<Film> findDirectorFilmsOrderLikes(int directorId);
+    List<Film> findDirectorFilmsOrderLikes(int directorId, FilmCursor after, int limit, Set<FilmPart> parts);
 
-    List<Film> findDirectorFilms(int directorId);
+    List<Film> findDirectorFilms(int directorId, FilmCursor after, int limit, Set<FilmPart> parts);
 
-    LinkedHashSet<Integer> getLikes(int filmId);
+    IntSet getLikes(int filmId);
 
     void addDirectorId(int filmId, int directorId) throws DuplicatedDataException;
 
     void deleteDirectorsId(int filmId);
 
-    Collection<Film> getCommonFilms(int userId, int friendId);
+    Collection<Film> getCommonFilms(int userId, int friendId, Set<FilmPart> parts);
+
+    List<Film> search(String query, boolean byTitle, boolean byDirector, FilmCursor after, int limit,
+                      Set<FilmPart> parts);
 
-    Collection<Film> searchByTitle(String query);
+    List<FilmSuggestion> suggest(String prefix, int limit);
 
-    Collection<Film> searchByDirector(String query);
+    FilmCacheStats getCacheStats();
+
+    String getFilmTag(int id);
 
     Collection<Film> getUsersLikedFilms(int userId);
+
+    List<Film> getRecommendations(int userId, Set<FilmPart> parts);
 }
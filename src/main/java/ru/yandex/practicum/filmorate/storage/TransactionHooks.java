@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Согласование кэшей, версий ETag и индексов в памяти с транзакцией БД.
+ * Изменение сбрасывает данные сразу и еще раз после завершения транзакции: между этими моментами параллельный
+ * запрос может прочитать из БД старое, еще не закоммиченное состояние и положить его обратно в кэш
+ * или отдать под новой версией, а повторный сброс это убирает. То, что прочитано и закэшировано внутри
+ * транзакции, сбрасывается при ее откате. Вне транзакции действие выполняется только сразу.
+ */
+public final class TransactionHooks {
+    private TransactionHooks() {
+    }
+
+    public static void nowAndAfterCompletion(Runnable action) {
+        action.run();
+        afterCompletion(status -> action.run());
+    }
+
+    public static void onRollback(Runnable action) {
+        afterCompletion(status -> {
+            if (status != TransactionSynchronization.STATUS_COMMITTED) {
+                action.run();
+            }
+        });
+    }
+
+    public static void afterCompletion(IntConsumer action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.accept(status);
+            }
+        });
+    }
+}
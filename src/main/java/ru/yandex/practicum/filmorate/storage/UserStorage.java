@@ -3,9 +3,12 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 
 public interface UserStorage {
@@ -13,10 +16,24 @@ public interface UserStorage {
 
     User getUser(Integer id) throws NotFoundException;
 
+    Optional<User> findUser(int id);
+
+    IntSet getFriendIds(int id);
+
+    boolean isFriend(int userId, int friendId);
+
     Collection<User> getFriends(Integer id) throws NotFoundException;
 
+    List<User> getFriends(int id, int after, int limit);
+
+    int getFriendsCount(int id);
+
     Set<User> getMutualFriend(Integer id1, Integer id2) throws NotFoundException;
 
+    List<User> getMutualFriends(int id1, int id2, int after, int limit);
+
+    List<User> getFriendSuggestions(int id, int limit);
+
     Integer addUser(User user) throws DuplicatedDataException, NotFoundException;
 
     void addFriend(User recipient, User sender, Boolean confirmed) throws NotFoundException;
@@ -29,5 +46,11 @@ public interface UserStorage {
 
     boolean contains(Integer id);
 
+    boolean isEmailTaken(String email, int exceptUserId);
+
+    boolean isLoginTaken(String login, int exceptUserId);
+
+    String getFriendsTag(int id);
+
     Collection<Feed> getFeeds(int userId);
 }
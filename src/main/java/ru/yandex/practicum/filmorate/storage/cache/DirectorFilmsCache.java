@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.TransactionHooks;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Фильмографии режиссеров: все фильмы режиссера с ключами сортировки. Страница в нужном порядке режется
+ * из списка в памяти, а из БД догружаются только фильмы страницы.
+ * Список сбрасывается при изменении любого его фильма, связей фильмов с режиссером и лайков,
+ * по правилам TransactionHooks.
+ */
+@Component
+@Slf4j
+public class DirectorFilmsCache {
+    private final Cache<Integer, List<Entry>> filmographies;
+    //Каким закэшированным режиссерам принадлежит фильм. Может содержать лишнее, это лишь лишний сброс
+    private final Map<Integer, Set<Integer>> directorsByFilm = new ConcurrentHashMap<>();
+    //Меняется при каждом сбросе, см. get
+    private final AtomicLong generation = new AtomicLong();
+
+    public DirectorFilmsCache(@Value("${filmorate.directors.films-cache.max-size:1000}") long maxSize,
+                              @Value("${filmorate.directors.films-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.filmographies = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Загрузка атомарна, как и в FilmCache: сброс режиссера дожидается ее окончания. Но сброс по фильму
+     * находит режиссеров через directorsByFilm, которая заполняется только после загрузки, поэтому
+     * любой сброс еще и меняет поколение: список, загруженный на фоне сброса, тут же убирается.
+     */
+    public List<Entry> get(int directorId, IntFunction<List<Entry>> loader) {
+        long before = generation.get();
+        List<Entry> films = filmographies.get(directorId, key -> {
+            List<Entry> loaded = List.copyOf(loader.apply(key));
+
+            for (Entry film : loaded) {
+                directorsByFilm.computeIfAbsent(film.id(), k -> ConcurrentHashMap.newKeySet()).add(key);
+            }
+
+            TransactionHooks.onRollback(() -> filmographies.invalidate(key));
+            return loaded;
+        });
+
+        if (generation.get() != before) {
+            filmographies.invalidate(directorId);
+        }
+
+        return films;
+    }
+
+    public void invalidateFilms(Collection<Integer> filmIds) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        List<Integer> copy = List.copyOf(filmIds);
+
+        //Режиссеры ищутся заново и после коммита: их список мог загрузиться уже после первого сброса
+        TransactionHooks.nowAndAfterCompletion(() -> {
+            generation.incrementAndGet();
+            filmographies.invalidateAll(directorsOf(copy));
+        });
+    }
+
+    public void invalidateDirectors(Collection<Integer> directorIds) {
+        if (directorIds.isEmpty()) {
+            return;
+        }
+
+        List<Integer> copy = List.copyOf(directorIds);
+
+        TransactionHooks.nowAndAfterCompletion(() -> {
+            generation.incrementAndGet();
+            filmographies.invalidateAll(copy);
+        });
+
+        log.trace("Сброшены фильмографии режиссеров {}", copy);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        filmographies.invalidateAll();
+        directorsByFilm.clear();
+    }
+
+    private Set<Integer> directorsOf(Collection<Integer> filmIds) {
+        Set<Integer> directorIds = new HashSet<>();
+
+        for (Integer filmId : filmIds) {
+            Set<Integer> directors = directorsByFilm.remove(filmId);
+
+            if (directors != null) {
+                directorIds.addAll(directors);
+            }
+        }
+
+        log.trace("Сброшены фильмографии режиссеров {}", directorIds);
+
+        return directorIds;
+    }
+
+    public record Entry(int id, LocalDate releaseDate, int likes) {
+    }
+}
@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.TransactionHooks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Счетчики версий фильмов и списков друзей для ETag. Версию списка друзей хранилища увеличивают при каждом
+ * изменении по правилам TransactionHooks. Версию фильма поднимает только FilmCache, в одном шаге со сбросом
+ * фильма из кэша, чтобы тело и ETag менялись вместе. Счетчики живут только в памяти, поэтому в ETag
+ * входит момент запуска.
+ */
+@Component
+public class EntityVersions {
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<Integer, Long> films = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> friends = new ConcurrentHashMap<>();
+
+    public String filmTag(int filmId) {
+        return tag("f", films, filmId);
+    }
+
+    public String friendsTag(int userId) {
+        return tag("u", friends, userId);
+    }
+
+    //Без привязки к транзакции: FilmCache сам повторяет вызов после коммита вслед за сбросом фильма
+    void bumpFilms(Collection<Integer> filmIds) {
+        filmIds.forEach(id -> films.merge(id, 1L, Long::sum));
+    }
+
+    public void bumpFriends(Collection<Integer> userIds) {
+        bump(friends, userIds);
+    }
+
+    private String tag(String kind, Map<Integer, Long> versions, int id) {
+        return "\"" + kind + "-" + epoch + "-" + versions.getOrDefault(id, 0L) + "\"";
+    }
+
+    private static void bump(Map<Integer, Long> versions, Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<Integer> copy = List.copyOf(ids);
+
+        TransactionHooks.nowAndAfterCompletion(() -> copy.forEach(id -> versions.merge(id, 1L, Long::sum)));
+    }
+}
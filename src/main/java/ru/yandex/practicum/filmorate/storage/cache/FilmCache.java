@@ -0,0 +1,181 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmCacheStats;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.storage.TransactionHooks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Кэш собранных фильмов перед FilmDbStorage.getFilm. Вытеснение по размеру (W-TinyLFU) и по возрасту записи.
+ * Хранилища сбрасывают фильм при каждом изменении его данных по правилам TransactionHooks.
+ * Вместе с этим меняется и версия фильма для ETag.
+ */
+@Component
+@Slf4j
+public class FilmCache {
+    private final Cache<Integer, Film> films;
+    private final EntityVersions versions;
+
+    public FilmCache(EntityVersions versions,
+                     @Value("${filmorate.films.cache.max-size:10000}") long maxSize,
+                     @Value("${filmorate.films.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.versions = versions;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    public Film get(int id, Loader loader) throws NotFoundException {
+        Film film;
+
+        //Загрузка идет внутри атомарного get: сброс того же фильма ждет ее окончания и убирает результат,
+        //поэтому прочитанная до коммита старая строка не может лечь в кэш уже после сброса
+        try {
+            film = films.get(id, key -> {
+                try {
+                    Film loaded = loader.load(key);
+                    //Внутри транзакции могли прочитать еще не закоммиченные данные
+                    TransactionHooks.onRollback(() -> films.invalidate(key));
+                    return loaded;
+                } catch (NotFoundException e) {
+                    throw new LoadFailure(e);
+                }
+            });
+        } catch (LoadFailure e) {
+            throw e.cause;
+        }
+
+        //likedUsers неизменяемый и общий. Отдаем копию, чтобы вызывающий код не мог поменять закэшированный фильм
+        return copy(film);
+    }
+
+    public void invalidate(int id) {
+        invalidate(List.of(id));
+    }
+
+    public void invalidate(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        List<Integer> copy = List.copyOf(ids);
+
+        //Версия поднимается только после сброса: увидевший новую версию уже не получит из кэша старый фильм
+        TransactionHooks.nowAndAfterCompletion(() -> {
+            films.invalidateAll(copy);
+            versions.bumpFilms(copy);
+        });
+
+        log.trace("Сброшены из кэша фильмы {}", ids);
+    }
+
+    /**
+     * Лайки меняют только likedUsers и счетчик, поэтому закэшированный фильм не сбрасываем, а правим на месте:
+     * иначе каждый ответ на лайк заново собирал бы фильм из БД. Значения абсолютные, так что повторить правку
+     * после коммита безопасно; при откате фильм просто сбрасывается.
+     */
+    public void updateLikes(Map<Integer, IntSet> likers, Map<Integer, Integer> counts) {
+        if (likers.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, IntSet> likersCopy = Map.copyOf(likers);
+        Map<Integer, Integer> countsCopy = Map.copyOf(counts);
+
+        patchLikes(likersCopy, countsCopy);
+        versions.bumpFilms(likersCopy.keySet());
+        TransactionHooks.afterCompletion(status -> {
+            if (status == TransactionSynchronization.STATUS_COMMITTED) {
+                patchLikes(likersCopy, countsCopy);
+            } else {
+                films.invalidateAll(likersCopy.keySet());
+            }
+            versions.bumpFilms(likersCopy.keySet());
+        });
+
+        log.trace("Обновлены лайки фильмов {} в кэше", likersCopy.keySet());
+    }
+
+    public String tag(int id) {
+        return versions.filmTag(id);
+    }
+
+    public FilmCacheStats stats() {
+        CacheStats stats = films.stats();
+
+        return FilmCacheStats.builder()
+                .size(films.estimatedSize())
+                .hits(stats.hitCount())
+                .misses(stats.missCount())
+                .evictions(stats.evictionCount())
+                .hitRate(stats.hitRate())
+                .build();
+    }
+
+    private void patchLikes(Map<Integer, IntSet> likers, Map<Integer, Integer> counts) {
+        likers.forEach((id, users) -> films.asMap().computeIfPresent(id, (key, film) -> {
+            Film patched = copy(film);
+
+            patched.setLikedUsers(users);
+            patched.setLikesCount(counts.getOrDefault(id, film.getLikesCount()));
+
+            return patched;
+        }));
+    }
+
+    private static Film copy(Film film) {
+        Set<Genre> genres = new TreeSet<>(Comparator.comparingInt(Genre::getId));
+
+        if (film.getGenres() != null) {
+            genres.addAll(film.getGenres());
+        }
+
+        return Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .releaseDate(film.getReleaseDate())
+                .duration(film.getDuration())
+                .likedUsers(film.getLikedUsers())
+                .rating(film.getRating())
+                .genres(genres)
+                .directors(film.getDirectors() == null ? null : new LinkedHashSet<>(film.getDirectors()))
+                .likesCount(film.getLikesCount())
+                .build();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        Film load(int id) throws NotFoundException;
+    }
+
+    //Caffeine пропускает через get только непроверяемые исключения
+    private static final class LoadFailure extends RuntimeException {
+        private final NotFoundException cause;
+
+        private LoadFailure(NotFoundException cause) {
+            super(cause);
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.TransactionHooks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Возможные знакомые пользователя: id в порядке убывания числа общих друзей.
+ * Дружба a -> b меняет подсказки самого a и всех, кто добавил b в друзья, их и сбрасываем,
+ * по правилам TransactionHooks.
+ */
+@Component
+@Slf4j
+public class FriendSuggestionsCache {
+    private final Cache<Integer, List<Integer>> suggestions;
+    //Меняется при полной очистке, см. get
+    private final AtomicLong generation = new AtomicLong();
+
+    public FriendSuggestionsCache(@Value("${filmorate.users.suggestions-cache.max-size:10000}") long maxSize,
+                                  @Value("${filmorate.users.suggestions-cache.ttl-seconds:600}") long ttlSeconds) {
+        this.suggestions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Загрузка атомарна, как и в FilmCache: сброс пользователя дожидается ее окончания. Полная очистка
+     * незавершенные загрузки не ждет, поэтому она меняет поколение, и загруженное на ее фоне тут же убирается.
+     */
+    public List<Integer> get(int userId, IntFunction<List<Integer>> loader) {
+        long before = generation.get();
+        List<Integer> ids = suggestions.get(userId, key -> {
+            List<Integer> loaded = List.copyOf(loader.apply(key));
+
+            TransactionHooks.onRollback(() -> suggestions.invalidate(key));
+            return loaded;
+        });
+
+        if (generation.get() != before) {
+            suggestions.invalidate(userId);
+        }
+
+        return ids;
+    }
+
+    public void invalidate(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+
+        List<Integer> copy = List.copyOf(userIds);
+
+        TransactionHooks.nowAndAfterCompletion(() -> suggestions.invalidateAll(copy));
+
+        log.trace("Сброшены возможные знакомые пользователей {}", copy);
+    }
+
+    public void invalidateAll() {
+        TransactionHooks.nowAndAfterCompletion(() -> {
+            generation.incrementAndGet();
+            suggestions.invalidateAll();
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Справочник, который почти не меняется (жанры, рейтинги): целиком загружается при первом обращении
+ * и хранится в массиве по id. Наружу отдаются копии, чтобы правка полученного объекта не меняла справочник.
+ * Если id не нашелся, справочник перечитывается, но не чаще раза в missReloadInterval: так подхватываются
+ * записи, добавленные в БД в обход приложения, а запросы несуществующих id не ходят в БД каждый раз.
+ */
+@Slf4j
+public class ReferenceCache<T> {
+    private final String name;
+    private final Supplier<List<T>> loader;
+    private final ToIntFunction<T> idOf;
+    private final UnaryOperator<T> copy;
+    private final long missReloadIntervalNanos;
+
+    private volatile Snapshot<T> snapshot;
+
+    public ReferenceCache(String name, Supplier<List<T>> loader, ToIntFunction<T> idOf, UnaryOperator<T> copy) {
+        this(name, loader, idOf, copy, Duration.ofSeconds(5));
+    }
+
+    ReferenceCache(String name, Supplier<List<T>> loader, ToIntFunction<T> idOf, UnaryOperator<T> copy,
+                   Duration missReloadInterval) {
+        this.name = name;
+        this.loader = loader;
+        this.idOf = idOf;
+        this.copy = copy;
+        this.missReloadIntervalNanos = missReloadInterval.toNanos();
+    }
+
+    public List<T> all() {
+        return snapshot().all().stream().map(copy).toList();
+    }
+
+    public T find(Integer id) {
+        T value = lookup(id);
+
+        return value == null ? null : copy.apply(value);
+    }
+
+    public boolean contains(Integer id) {
+        return lookup(id) != null;
+    }
+
+    /**
+     * Сбрасывает справочник, следующее обращение загрузит его из БД заново.
+     */
+    public void reload() {
+        synchronized (this) {
+            snapshot = null;
+        }
+
+        log.trace("Справочник {} сброшен", name);
+    }
+
+    private T lookup(Integer id) {
+        Snapshot<T> current = snapshot();
+        T value = current.find(id);
+
+        if (value != null || id == null || id <= 0) {
+            return value;
+        }
+
+        synchronized (this) {
+            //Пока ждали блокировку, справочник мог уже перечитать другой поток
+            if (snapshot == current && System.nanoTime() - current.loadedAt() >= missReloadIntervalNanos) {
+                snapshot = load();
+            }
+        }
+
+        return snapshot().find(id);
+    }
+
+    private Snapshot<T> snapshot() {
+        Snapshot<T> current = snapshot;
+
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+
+                if (current == null) {
+                    current = load();
+                    snapshot = current;
+                }
+            }
+        }
+
+        return current;
+    }
+
+    private Snapshot<T> load() {
+        List<T> values = List.copyOf(loader.get());
+        int maxId = values.stream().mapToInt(idOf).max().orElse(0);
+        Object[] byId = new Object[maxId + 1];
+
+        for (T value : values) {
+            byId[idOf.applyAsInt(value)] = value;
+        }
+
+        log.trace("Загружен справочник {}: {} записей", name, values.size());
+
+        return new Snapshot<>(byId, values, System.nanoTime());
+    }
+
+    private record Snapshot<T>(Object[] byId, List<T> all, long loadedAt) {
+        @SuppressWarnings("unchecked")
+        T find(Integer id) {
+            if (id == null || id < 0 || id >= byId.length) {
+                return null;
+            }
+
+            return (T) byId[id];
+        }
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,6 +19,10 @@ public class BaseDbStorage<T> {
     protected final RowMapper<T> mapper;
     public static final DateTimeFormatter formatterForBdDate = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    protected static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
     protected Optional<T> findOne(String query, Object... params) {
         try {
             T result = jdbc.queryForObject(query, mapper, params);
@@ -40,6 +45,12 @@ public class BaseDbStorage<T> {
         jdbc.update(query, params);
     }
 
+    protected void batchUpdate(String query, List<Object[]> params) {
+        if (!params.isEmpty()) {
+            jdbc.batchUpdate(query, params);
+        }
+    }
+
     protected int insert(String query, Object... params) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         jdbc.update(connection -> {
@@ -3,13 +3,23 @@ package ru.yandex.practicum.filmorate.storage.dao;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.storage.cache.DirectorFilmsCache;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.SearchIndex;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Component
 @Slf4j
@@ -19,9 +29,12 @@ public class DirectorDbStorage extends BaseDbStorage<Director> {
     private static final String FIND_ALL = "SELECT * FROM directors";
     private static final String FIND_BY_ID = "SELECT * FROM directors WHERE id = ?";
     private static final String FIND_BY_NAME = "SELECT * FROM directors WHERE name = ?";
-    private static final String FIND_OBJECT_BY_FILM = "SELECT * FROM directors WHERE id IN (" +
-            "SELECT director_id FROM films_directors WHERE film_id = ?" +
-            ")";
+    private static final String FIND_OBJECTS_BY_FILMS = "SELECT fd.film_id, d.id, d.name " +
+            "FROM films_directors AS fd " +
+            "   JOIN directors AS d ON d.id = fd.director_id " +
+            "WHERE fd.film_id IN (%s)";
+    private static final String FIND_IDS = "SELECT id FROM directors WHERE id IN (%s)";
+    private static final String FIND_BY_IDS = "SELECT * FROM directors WHERE id IN (%s) ORDER BY id";
     private static final String INSERT_DIRECTOR = "INSERT INTO directors(name)VALUES (?)";
     private static final String UPDATE = "UPDATE directors SET name = ? WHERE id = ?";
     private static final String DELETE = "DELETE FROM directors WHERE id = ?";
@@ -29,8 +42,18 @@ public class DirectorDbStorage extends BaseDbStorage<Director> {
     private static final String DELETE_FILMSDIRECTORS_BY_FILMID_DIRECTORID = "DELETE films_directors WHERE film_id = ? and director_id = ?";
     private static final String DELETE_FILMSDIRECTORS_BY_DIRECTORID = "DELETE films_directors WHERE director_id = ?";
 
-    public DirectorDbStorage(JdbcTemplate jdbc, RowMapper<Director> mapper) {
+    private static final String FIND_FILM_IDS_QUERY = "SELECT film_id FROM films_directors WHERE director_id = ?";
+
+    private final SearchIndex searchIndex;
+    private final FilmCache filmCache;
+    private final DirectorFilmsCache directorFilmsCache;
+
+    public DirectorDbStorage(JdbcTemplate jdbc, RowMapper<Director> mapper, SearchIndex searchIndex,
+                             FilmCache filmCache, DirectorFilmsCache directorFilmsCache) {
         super(jdbc, mapper);
+        this.searchIndex = searchIndex;
+        this.filmCache = filmCache;
+        this.directorFilmsCache = directorFilmsCache;
     }
 
     public boolean isDirectorWithSameNameExist(String name) {
@@ -46,23 +69,58 @@ public class DirectorDbStorage extends BaseDbStorage<Director> {
         return findMany(FIND_ALL);
     }
 
-    public Collection<Director> findObjectByFilm(Integer filmId) {
-        return findMany(FIND_OBJECT_BY_FILM, filmId);
+    public Map<Integer, List<Director>> findObjectsByFilms(Collection<Integer> filmIds) {
+        Map<Integer, List<Director>> result = new HashMap<>();
+
+        if (filmIds.isEmpty()) {
+            return result;
+        }
+
+        jdbc.query(String.format(FIND_OBJECTS_BY_FILMS, placeholders(filmIds.size())),
+                (RowCallbackHandler) rs -> result
+                        .computeIfAbsent(rs.getInt("film_id"), k -> new ArrayList<>())
+                        .add(mapper.mapRow(rs, rs.getRow())),
+                filmIds.toArray());
+
+        return result;
+    }
+
+    public List<Director> findByIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        return findMany(String.format(FIND_BY_IDS, placeholders(ids.size())), ids.toArray());
+    }
+
+    public Set<Integer> findExistingIds(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+
+        return new HashSet<>(jdbc.queryForList(String.format(FIND_IDS, placeholders(ids.size())),
+                Integer.class, ids.toArray()));
     }
 
     public Director create(Director director) {
         int id = insert(INSERT_DIRECTOR, director.getName());
         director.setId(id);
+        searchIndex.putDirector(id, director.getName());
         return director;
     }
 
     public Director update(Director newDirector) {
         update(UPDATE, newDirector.getName(), newDirector.getId());
+        searchIndex.putDirector(newDirector.getId(), newDirector.getName());
+        filmCache.invalidate(findFilmIds(newDirector.getId()));
         return newDirector;
     }
 
     public boolean delete(int directorId) {
+        filmCache.invalidate(findFilmIds(directorId));
+        directorFilmsCache.invalidateDirectors(List.of(directorId));
         deleteFilmDirectorByDirectorId(directorId);
+        searchIndex.removeDirector(directorId);
 
         return delete(DELETE, directorId);
     }
@@ -74,9 +132,16 @@ public class DirectorDbStorage extends BaseDbStorage<Director> {
 
     public void deleteFilmDirector(int filmId, int directorId) {
         update(DELETE_FILMSDIRECTORS_BY_FILMID_DIRECTORID, filmId, directorId);
+        searchIndex.unlinkDirector(filmId, directorId);
+        filmCache.invalidate(filmId);
+        directorFilmsCache.invalidateDirectors(List.of(directorId));
     }
 
     public void deleteFilmDirectorByDirectorId(int directorId) {
         update(DELETE_FILMSDIRECTORS_BY_DIRECTORID, directorId);
     }
+
+    private List<Integer> findFilmIds(int directorId) {
+        return jdbc.queryForList(FIND_FILM_IDS_QUERY, Integer.class, directorId);
+    }
 }
@@ -7,6 +7,7 @@ import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.storage.dao.mappers.FeedRowMapper;
 
 import java.util.Collection;
+import java.util.List;
 
 @Component
 @Slf4j
@@ -26,6 +27,10 @@ public class FeedDbStorage extends BaseDbStorage<Feed> {
     private static final String ADD_QUERY =
             "INSERT INTO events(timestamp, user_id, eventType, operation, entity_id) " +
             "VALUES (?, ?, ?, ?, ?)";
+    //Для отложенной записи: пользователь мог быть удален, пока событие ждало в буфере
+    private static final String ADD_IF_USER_EXISTS_QUERY =
+            "INSERT INTO events(timestamp, user_id, eventType, operation, entity_id) " +
+            "SELECT ?, id, ?, ?, ? FROM users WHERE id = ?";
     private static final String DELETE_BY_ID =
             "DELETE events " +
             "WHERE event_id = ?";
@@ -66,4 +71,17 @@ public class FeedDbStorage extends BaseDbStorage<Feed> {
 
         log.trace("Add event " + feed);
     }
+
+    public void addFeeds(List<Feed> feeds) {
+        batchUpdate(ADD_IF_USER_EXISTS_QUERY, feeds.stream()
+                .map(feed -> new Object[]{
+                        feed.getTimestamp(),
+                        feed.getEventType(),
+                        feed.getOperation(),
+                        feed.getEntityId(),
+                        feed.getUserId()})
+                .toList());
+
+        log.trace("Add {} events", feeds.size());
+    }
 }
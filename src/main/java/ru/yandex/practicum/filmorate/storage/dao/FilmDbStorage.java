@@ -4,144 +4,123 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.SQLWarningException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dto.FeedEventType;
 import ru.yandex.practicum.filmorate.dto.FeedOperationType;
+import ru.yandex.practicum.filmorate.dto.FilmCursor;
 import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmCacheStats;
+import ru.yandex.practicum.filmorate.model.FilmPart;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
-
+import ru.yandex.practicum.filmorate.storage.cache.DirectorFilmsCache;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SearchIndex;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
 @Slf4j
 @Primary
 public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
+    //Сколько фильмов догружаем за один набор запросов, чтобы не упереться в длину IN-списка
+    private static final int HYDRATION_CHUNK_SIZE = 500;
+    //Те же порядки, что у пагинации по курсору: по id, по дате выхода и по убыванию лайков
+    private static final Comparator<DirectorFilmsCache.Entry> DIRECTOR_FILMS_BY_ID =
+            Comparator.comparingInt(DirectorFilmsCache.Entry::id);
+    private static final Comparator<DirectorFilmsCache.Entry> DIRECTOR_FILMS_BY_YEAR =
+            Comparator.comparing(DirectorFilmsCache.Entry::releaseDate, Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .thenComparing(DIRECTOR_FILMS_BY_ID);
+    private static final Comparator<DirectorFilmsCache.Entry> DIRECTOR_FILMS_BY_LIKES =
+            Comparator.comparingInt(DirectorFilmsCache.Entry::likes).reversed()
+                    .thenComparing(DIRECTOR_FILMS_BY_ID);
     //Не проходило по длине checkStyle
-    private static final String FIND_ALL =
+    private static final String FIND_ALL_QUERY =
+            "SELECT * " +
+            "FROM films " +
+            "ORDER BY id";
+    private static final String FIND_PAGE_QUERY =
             "SELECT * " +
-            "FROM films";
+            "FROM films " +
+            "WHERE id > ? " +
+            "ORDER BY id " +
+            "LIMIT ?";
     private static final String FIND_BY_ID_QUERY =
             "SELECT * " +
             "FROM films " +
             "WHERE id = ?";
-    private static final String FIND_MOST_POPULAR_QUERY =
-            "SELECT id, name, description, release_date, duration, rating_id " +
-            "FROM films AS f " +
-            "    LEFT OUTER JOIN liked_user AS l ON f.id = l.film_id " +
-            "GROUP BY f.id " +
-            "ORDER BY COUNT(l.user_id) " +
-            "DESC LIMIT ?";
+    private static final String FIND_BY_IDS_QUERY =
+            "SELECT * " +
+            "FROM films " +
+            "WHERE id IN (%s)";
     private static final String ADD_QUERY =
             "INSERT INTO films (name, description, release_date, duration, rating_id) " +
             "VALUES (?, ?, ?, ?, ?)";
+    private static final String ADD_MANY_QUERY =
+            "INSERT INTO films (name, description, release_date, duration, rating_id) " +
+            "VALUES %s";
+    private static final String ADD_MANY_ROW = "(?, ?, ?, ?, ?)";
+    //Ограничение на число строк в одном многострочном INSERT, чтобы не упираться в лимит параметров
+    private static final int ADD_MANY_MAX_ROWS = 200;
     private static final String ADD_GENRE_QUERY =
             "INSERT INTO film_genre (film_id, genre_id) " +
             "VALUES (?, ?)";
-    private static final String ADD_LIKE_QUERY =
-            "INSERT INTO liked_user (film_id, user_id) " +
-            "VALUES (?, ?)";
+    private static final String RECOUNT_LIKES_QUERY =
+            "UPDATE films AS f SET likes_count = (SELECT COUNT(*) FROM liked_user AS l WHERE l.film_id = f.id)";
     private static final String UPDATE_FILM_QUERY =
             "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, rating_id = ? " +
             "WHERE id = ?";
     private static final String DELETE_QUERY =
             "DELETE FROM films WHERE id = ?";
-    private static final String DELETE_LIKE_QUERY =
-            "DELETE FROM liked_user " +
-            "WHERE film_id = ? AND user_id = ?";
     private static final String CONTAINS_QUERY =
             "SELECT EXISTS(SELECT id FROM films WHERE id = ?) AS b";
-    private static final String FIND_DIRECTOR_FILMS_ORDER_YEAR_QUERY =
-            "SELECT f.id, " +
-            "   f.name, " +
-            "   f.description, " +
-            "   f.release_date, " +
-            "   f.duration, " +
-            "   f.rating_id " +
-            "FROM films AS f " +
-            "  JOIN films_directors AS fd ON fd.film_id = f.id " +
-            "WHERE fd.director_id = ? " +
-            "ORDER BY f.release_date";
-    private static final String FIND_DIRECTOR_FILMS_ORDER_LIKES_QUERY =
-            "SELECT f.id, " +
-            "   f.name, " +
-            "   f.description, " +
-            "   f.release_date, " +
-            "   f.duration, " +
-            "   f.rating_id " +
-            "FROM films AS f " +
-            "   LEFT OUTER JOIN films_directors AS fd ON fd.film_id = f.id " +
-            "   LEFT OUTER JOIN liked_user AS lu ON lu.film_id = f.id " +
-            "WHERE fd.director_id = ? " +
-            "GROUP BY f.id " +
-            "ORDER BY COUNT(lu.user_id) DESC";
+    //Вся фильмография с ключами сортировки, порядок и страницу выбираем в памяти
     private static final String FIND_DIRECTOR_FILMS_QUERY =
-            "SELECT f.* " +
+            "SELECT f.id, f.release_date, f.likes_count " +
             "FROM films_directors AS fd " +
             "   JOIN films AS f ON fd.film_id = f.id " +
-            "WHERE fd.director_id = ? ";
-    private static final String FIND_LIKES_BY_ID_QUERY = "SELECT user_id FROM liked_user WHERE film_id = ?";
+            "WHERE fd.director_id = ?";
     private static final String INSERT_FILM_DIRECTOR_QUERY =
             "INSERT INTO films_directors(film_id, director_id) " +
             "VALUES (?, ?)";
+    private static final String DELETE_GENRE_QUERY = "DELETE FROM film_genre WHERE film_id = ? AND genre_id = ?";
+    private static final String DELETE_FILM_DIRECTOR_QUERY =
+            "DELETE FROM films_directors WHERE film_id = ? AND director_id = ?";
     private static final String DELETE_FROM_GENRE_QUERY = "DELETE FROM film_genre WHERE film_id = ?";
     private static final String DELETE_FROM_LIKED_USER_QUERY = "DELETE FROM liked_user WHERE film_id = ?";
     private static final String DELETE_FROM_FILMS_DIRECTORS_QUERY = "DELETE FROM films_directors WHERE film_id = ?";
     private static final String DELETE_FROM_REVIEWS_QUERY = "DELETE FROM reviews WHERE film_id = ?";
-    private static final String GET_USERS_FILMS_QUERY =
-            "SELECT id, name, description, release_date, duration, rating_id " +
-            "FROM films AS f " +
-            "JOIN liked_user AS lu ON lu.film_id = f.id " +
-            "WHERE lu.user_id = ?";
-    private static final String FIND_COMMON_FILMS =
-            "SELECT id, name, description, release_date, duration, rating_id " +
-            "FROM( " +
-            "     SELECT film_id " +
-            "     FROM liked_user " +
-            "     WHERE user_id = ? " +
-            "     INTERSECT " +
-            "     SELECT film_id " +
-            "     FROM liked_user " +
-            "     WHERE user_id = ? " +
-            "    ) l " +
-            "   JOIN films f on f.id = l.film_id " +
-            "   JOIN liked_user ls on ls.film_id = f.id " +
-            "GROUP BY id, name, description, release_date, duration, rating_id " +
-            "ORDER BY COUNT(ls.user_id)";
-    private static final String SEARCH_BY_TITLE_QUERY =
-            "SELECT * " +
-            "FROM films " +
-            "WHERE POSITION (LOWER(?), LOWER(name)) <> 0";
-    private static final String SEARCH_BY_DIRECTOR_QUERY =
-            "SELECT f.id, " +
-            "   f.name, " +
-            "   f.description, " +
-            "   f.release_date, " +
-            "   f.duration, " +
-            "   f.rating_id " +
-            "FROM films AS f " +
-            "WHERE f.id IN (" +
-                "SELECT film_id " +
-                "FROM films_directors " +
-                "WHERE director_id IN (" +
-                    "SELECT id " +
-                    "FROM directors " +
-                    "WHERE POSITION (LOWER(?), LOWER(name)) <> 0" +
-                    ")" +
-            "   )";
     private final ReviewDbStorage reviewDbStorage;
     private final FeedDbStorage feedDbStorage;
     private final DirectorDbStorage directorDbStorage;
     private final RatingDbStorage ratingStorage;
     private final GenreDbStorage genreStorage;
+    private final PopularityIndex popularityIndex;
+    private final SearchIndex searchIndex;
+    private final LikeIndex likeIndex;
+    private final LikeWriteBuffer likeWriteBuffer;
+    private final FilmCache filmCache;
+    private final DirectorFilmsCache directorFilmsCache;
 
     public FilmDbStorage(JdbcTemplate jdbc,
                          RowMapper<Film> mapper,
@@ -149,57 +128,87 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                          GenreDbStorage genreStorage,
                          ReviewDbStorage reviewDbStorage,
                          DirectorDbStorage directorDbStorage,
-                         FeedDbStorage feedDbStorage) {
+                         FeedDbStorage feedDbStorage,
+                         PopularityIndex popularityIndex,
+                         SearchIndex searchIndex,
+                         LikeIndex likeIndex,
+                         LikeWriteBuffer likeWriteBuffer,
+                         FilmCache filmCache,
+                         DirectorFilmsCache directorFilmsCache) {
         super(jdbc, mapper);
         this.ratingStorage = ratingStorage;
         this.genreStorage = genreStorage;
         this.reviewDbStorage = reviewDbStorage;
         this.directorDbStorage = directorDbStorage;
         this.feedDbStorage = feedDbStorage;
+        this.popularityIndex = popularityIndex;
+        this.searchIndex = searchIndex;
+        this.likeIndex = likeIndex;
+        this.likeWriteBuffer = likeWriteBuffer;
+        this.filmCache = filmCache;
+        this.directorFilmsCache = directorFilmsCache;
     }
 
     @Override
     public Collection<Film> getFilms() throws NotFoundException {
-        Collection<Film> films = new ArrayList<>();
-        for (Film e : findMany(FIND_ALL)) {
-            foldFilm(e.getId(), e);
-            films.add(e);
+        return getFilms(FilmCursor.FIRST, Integer.MAX_VALUE, FilmPart.ALL);
+    }
+
+    @Override
+    public List<Film> getFilms(FilmCursor after, int limit, Set<FilmPart> parts) {
+        return foldFilms(findMany(FIND_PAGE_QUERY, after.id(), limit), parts);
+    }
+
+    @Override
+    public void exportFilms(int chunkSize, Set<FilmPart> parts, Consumer<List<Film>> consumer) {
+        List<Film> chunk = new ArrayList<>(chunkSize);
+
+        jdbc.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(FIND_ALL_QUERY,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(chunkSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            chunk.add(mapper.mapRow(rs, rs.getRow()));
+
+            if (chunk.size() == chunkSize) {
+                consumer.accept(foldFilms(new ArrayList<>(chunk), parts));
+                chunk.clear();
+            }
+        });
+
+        if (!chunk.isEmpty()) {
+            consumer.accept(foldFilms(chunk, parts));
         }
-        return films;
     }
 
     @Override
     public Film getFilm(Integer id) throws NotFoundException {
         try {
-            Film film = findOne(FIND_BY_ID_QUERY, id)
-                    .orElseThrow(() -> new NotFoundException("Не найден фильм " + id));
-            foldFilm(id, film);
-
-            return film;
+            return filmCache.get(id, this::loadFilm);
         } catch (NotFoundException e) {
             log.warn("Не удалось получить фильм {}", id);
             throw e;
         }
     }
 
+    private Film loadFilm(int id) throws NotFoundException {
+        Film film = findOne(FIND_BY_ID_QUERY, id)
+                .orElseThrow(() -> new NotFoundException("Не найден фильм " + id));
+        foldFilms(List.of(film), FilmPart.ALL);
 
+        return film;
+    }
 
     @Override
     public List<Film> getMostPopular(int count, Integer genreId, Integer year) {
-        if (genreId != null && year != null) {
-            return findAllByGenreAndYear(genreId, year).stream().limit(count).toList();
-        } else if (genreId != null) {
-            return findAllByGenre(genreId).stream().limit(count).toList();
-        } else if (year != null) {
-            return findAllByYear(year).stream().limit(count).toList();
-        }
-        return findMany(FIND_MOST_POPULAR_QUERY, count).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+        return findByIds(popularityIndex.top(count, genreId, year), FilmPart.ALL);
+    }
+
+    @Override
+    public List<Film> getMostPopular(int count, Integer genreId, Integer fromYear, Integer toYear,
+                                     Set<FilmPart> parts) {
+        return findByIds(popularityIndex.top(count, genreId, fromYear, toYear), parts);
     }
 
     private void checkFilmAttributes(Film film) throws CorruptedDataException {
@@ -215,21 +224,16 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
             throw new CorruptedDataException("Рейтинг " + ratingId + " не найден");
         }
 
-        var genres = film.getGenres();
+        var missingGenres = genreStorage.findMissing(linkedIds(film.getGenres(), Genre::getId));
 
-        if (genres != null) {
-            for (var genre: genres) {
-               var genreId = genre.getId();
-
-               if (!genreStorage.contains(genreId)) {
-                   log.warn("Не удалось применить фильм {}", film);
-                   throw new CorruptedDataException("Жанр " + genreId + " не найден");
-               }
-            }
+        if (!missingGenres.isEmpty()) {
+            log.warn("Не удалось применить фильм {}", film);
+            throw new CorruptedDataException("Жанры " + missingGenres + " не найдены");
         }
     }
 
     @Override
+    @Transactional
     public Integer addFilm(Film film) throws CorruptedDataException, DuplicatedDataException {
         checkFilmAttributes(film);
 
@@ -242,13 +246,17 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
 
         film.setId(id);
 
-        updateGenresForFilm(film);
-        updateDirectorsForFilm(film);
+        updateGenresForFilm(film, true);
+        updateDirectorsForFilm(film, true);
+        indexFilm(film);
+        directorFilmsCache.invalidateDirectors(linkedIds(film.getDirectors(), Director::getId));
+        resolveReferences(film);
 
         return id;
     }
 
     @Override
+    @Transactional
     public void updateFilm(Film film) throws CorruptedDataException, DuplicatedDataException {
         checkFilmAttributes(film);
 
@@ -260,8 +268,141 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 film.getRating().getId(),
                 film.getId());
 
-        updateGenresForFilm(film);
-        updateDirectorsForFilm(film);
+        updateGenresForFilm(film, false);
+        updateDirectorsForFilm(film, false);
+        indexFilm(film);
+        filmCache.invalidate(film.getId());
+        directorFilmsCache.invalidateFilms(List.of(film.getId()));
+        directorFilmsCache.invalidateDirectors(linkedIds(film.getDirectors(), Director::getId));
+    }
+
+    @Override
+    @Transactional
+    public List<String> addFilms(List<Film> films) {
+        List<String> errors = new ArrayList<>(Collections.nCopies(films.size(), null));
+        Set<Integer> directorIds = new HashSet<>();
+
+        for (Film film : films) {
+            directorIds.addAll(linkedIds(film.getDirectors(), Director::getId));
+        }
+
+        Set<Integer> existingDirectors = directorDbStorage.findExistingIds(directorIds);
+        List<Film> valid = new ArrayList<>();
+
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            String error = findImportError(film, existingDirectors);
+
+            if (error == null) {
+                valid.add(film);
+            } else {
+                errors.set(i, error);
+            }
+        }
+
+        for (int from = 0; from < valid.size(); from += ADD_MANY_MAX_ROWS) {
+            insertFilms(valid.subList(from, Math.min(valid.size(), from + ADD_MANY_MAX_ROWS)));
+        }
+
+        List<Object[]> genres = new ArrayList<>();
+        List<Object[]> directors = new ArrayList<>();
+
+        for (Film film : valid) {
+            linkedIds(film.getGenres(), Genre::getId).forEach(id -> genres.add(new Object[]{film.getId(), id}));
+            linkedIds(film.getDirectors(), Director::getId)
+                    .forEach(id -> directors.add(new Object[]{film.getId(), id}));
+        }
+
+        batchUpdate(ADD_GENRE_QUERY, genres);
+        batchUpdate(INSERT_FILM_DIRECTOR_QUERY, directors);
+        valid.forEach(this::indexFilm);
+        directorFilmsCache.invalidateDirectors(directors.stream().map(link -> (Integer) link[1]).toList());
+
+        log.trace("Импортировано {} фильмов из {}", valid.size(), films.size());
+
+        return errors;
+    }
+
+    private String findImportError(Film film, Set<Integer> existingDirectors) {
+        if (film.getReleaseDate() == null || film.getReleaseDate().isBefore(Film.EARLY_DATE)) {
+            return "Фильм не может выйти раньше " + Film.EARLY_DATE;
+        }
+
+        if (film.getRating() == null || !ratingStorage.contains(film.getRating().getId())) {
+            return "Рейтинг " + (film.getRating() == null ? null : film.getRating().getId()) + " не найден";
+        }
+
+        var missingGenres = genreStorage.findMissing(linkedIds(film.getGenres(), Genre::getId));
+
+        if (!missingGenres.isEmpty()) {
+            return "Жанры " + missingGenres + " не найдены";
+        }
+
+        var missingDirectors = linkedIds(film.getDirectors(), Director::getId).stream()
+                .filter(id -> !existingDirectors.contains(id))
+                .toList();
+
+        if (!missingDirectors.isEmpty()) {
+            return "Режиссеры " + missingDirectors + " не найдены";
+        }
+
+        return null;
+    }
+
+    private void insertFilms(List<Film> films) {
+        String query = String.format(ADD_MANY_QUERY, String.join(", ", Collections.nCopies(films.size(), ADD_MANY_ROW)));
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbc.update(connection -> {
+            PreparedStatement ps = connection.prepareStatement(query, new String[]{"id"});
+            int idx = 1;
+
+            for (Film film : films) {
+                ps.setString(idx++, film.getName());
+                ps.setString(idx++, film.getDescription());
+                ps.setObject(idx++, film.getReleaseDate());
+                ps.setObject(idx++, film.getDuration());
+                ps.setObject(idx++, film.getRating().getId());
+            }
+
+            return ps;
+        }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+
+        for (int i = 0; i < films.size(); i++) {
+            films.get(i).setId(((Number) keys.get(i).values().iterator().next()).intValue());
+        }
+    }
+
+    /**
+     * Дополняет только что записанный фильм названиями рейтинга, жанров и режиссеров, чтобы ответ на создание
+     * собрать из того, что уже есть, а не перечитывать фильм. Рейтинги и жанры берутся из памяти.
+     */
+    private void resolveReferences(Film film) {
+        Set<Genre> genres = new TreeSet<>(Comparator.comparingInt(Genre::getId));
+        Set<Integer> directorIds = linkedIds(film.getDirectors(), Director::getId);
+
+        genres.addAll(genreStorage.findGenres(linkedIds(film.getGenres(), Genre::getId)));
+
+        film.setRating(ratingStorage.findRating(film.getRating().getId()).orElse(film.getRating()));
+        film.setGenres(genres);
+        film.setDirectors(new LinkedHashSet<>(directorDbStorage.findByIds(directorIds)));
+        film.setLikedUsers(IntSet.EMPTY);
+        film.setLikesCount(0);
+    }
+
+    private void indexFilm(Film film) {
+        List<Integer> genreIds = film.getGenres() == null
+                ? List.of()
+                : film.getGenres().stream().map(Genre::getId).toList();
+
+        List<Integer> directorIds = film.getDirectors() == null
+                ? List.of()
+                : film.getDirectors().stream().map(Director::getId).toList();
+
+        popularityIndex.putFilm(film.getId(), film.getReleaseDate(), genreIds);
+        searchIndex.putFilm(film.getId(), film.getName(), directorIds);
     }
 
     @Override
@@ -271,18 +412,25 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         delete(DELETE_FROM_LIKED_USER_QUERY, id);
         delete(DELETE_FROM_GENRE_QUERY, id);
         delete(DELETE_QUERY, id);
+
+        popularityIndex.removeFilm(id);
+        searchIndex.removeFilm(id);
+        likeIndex.removeFilm(id);
+        filmCache.invalidate(id);
+        directorFilmsCache.invalidateFilms(List.of(id));
     }
 
     @Override
     public void deleteDirectorsId(int filmId) {
         delete(DELETE_FROM_FILMS_DIRECTORS_QUERY, filmId);
+        searchIndex.unlinkDirectors(filmId);
+        filmCache.invalidate(filmId);
+        directorFilmsCache.invalidateFilms(List.of(filmId));
     }
 
     @Override
     public void addLike(int likedUser, int film) {
-        update(ADD_LIKE_QUERY, film, likedUser);
-
-        feedDbStorage.addFeed(Feed.builder()
+        likeWriteBuffer.like(likedUser, film, Feed.builder()
                 .userId(likedUser)
                 .timestamp(new Date().getTime())
                 .eventType(FeedEventType.LIKE.name())
@@ -293,9 +441,7 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
 
     @Override
     public void deleteLike(int unlikedUser, int film) {
-        update(DELETE_LIKE_QUERY, film, unlikedUser);
-
-        feedDbStorage.addFeed(Feed.builder()
+        likeWriteBuffer.unlike(unlikedUser, film, Feed.builder()
                 .userId(unlikedUser)
                 .timestamp(new Date().getTime())
                 .eventType(FeedEventType.LIKE.name())
@@ -304,6 +450,26 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .build());
     }
 
+    @Override
+    public FilmCacheStats getCacheStats() {
+        return filmCache.stats();
+    }
+
+    @Override
+    public String getFilmTag(int id) {
+        return filmCache.tag(id);
+    }
+
+    @Override
+    public void recountLikes() {
+        int updated = jdbc.update(RECOUNT_LIKES_QUERY);
+        popularityIndex.invalidate();
+        searchIndex.invalidate();
+        directorFilmsCache.invalidateAll();
+
+        log.info("Пересчитаны лайки для {} фильмов", updated);
+    }
+
     @Override
     public boolean contains(Integer id) {
         return jdbc.queryForList(CONTAINS_QUERY, Boolean.class, id).getFirst();
@@ -368,18 +534,13 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     }
 
     @Override
-    public void addReviewLike(int reviewId, int userid, int useful) {
-        reviewDbStorage.addReviewLike(reviewId, userid, useful);
+    public int addReviewLike(int reviewId, int userid, int useful) {
+        return reviewDbStorage.addReviewLike(reviewId, userid, useful);
     }
 
     @Override
-    public boolean containsReviewLike(int reviewId, int userid) {
-        return reviewDbStorage.containsReviewLike(reviewId, userid);
-    }
-
-    @Override
-    public void deleteReviewLike(int reviewId, int userid) {
-        reviewDbStorage.deleteReviewLike(reviewId, userid);
+    public Optional<Integer> deleteReviewLike(int reviewId, int userid) {
+        return reviewDbStorage.deleteReviewLike(reviewId, userid);
     }
 
     @Override
@@ -388,47 +549,46 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     }
 
     @Override
-    public void updateReviewLike(int reviewId, int userid, int useful) {
-        reviewDbStorage.updateReviewLike(reviewId, userid, useful);
+    public List<Film> findDirectorFilmsOrderYear(int directorId, FilmCursor after, int limit, Set<FilmPart> parts) {
+        return findDirectorFilms(directorId, DIRECTOR_FILMS_BY_YEAR, after, limit, parts);
     }
 
     @Override
-    public List<Film> findDirectorFilmsOrderYear(int directorId) {
-        return findMany(FIND_DIRECTOR_FILMS_ORDER_YEAR_QUERY, directorId).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+    public List<Film> findDirectorFilmsOrderLikes(int directorId, FilmCursor after, int limit, Set<FilmPart> parts) {
+        return findDirectorFilms(directorId, DIRECTOR_FILMS_BY_LIKES, after, limit, parts);
     }
 
     @Override
-    public List<Film> findDirectorFilmsOrderLikes(int directorId) {
-        return findMany(FIND_DIRECTOR_FILMS_ORDER_LIKES_QUERY, directorId).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+    public List<Film> findDirectorFilms(int directorId, FilmCursor after, int limit, Set<FilmPart> parts) {
+        return findDirectorFilms(directorId, DIRECTOR_FILMS_BY_ID, after, limit, parts);
     }
 
-    @Override
-    public List<Film> findDirectorFilms(int directorId) {
-        return findMany(FIND_DIRECTOR_FILMS_QUERY, directorId).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+    /**
+     * Страница фильмографии: упорядоченный список берется из кэша, а сами фильмы страницы со всеми
+     * вложенными данными догружаются пачкой, без запросов на каждый фильм.
+     */
+    private List<Film> findDirectorFilms(int directorId, Comparator<DirectorFilmsCache.Entry> order,
+                                         FilmCursor after, int limit, Set<FilmPart> parts) {
+        DirectorFilmsCache.Entry from = new DirectorFilmsCache.Entry(after.id(), after.releaseDate(), after.likes());
+
+        return findByIds(directorFilmsCache.get(directorId, this::loadDirectorFilms).stream()
+                .filter(film -> order.compare(film, from) > 0)
+                .sorted(order)
+                .limit(limit)
+                .map(DirectorFilmsCache.Entry::id)
+                .toList(), parts);
+    }
+
+    private List<DirectorFilmsCache.Entry> loadDirectorFilms(int directorId) {
+        return jdbc.query(FIND_DIRECTOR_FILMS_QUERY, (rs, rowNum) -> new DirectorFilmsCache.Entry(
+                rs.getInt("id"),
+                rs.getObject("release_date", LocalDate.class),
+                rs.getInt("likes_count")), directorId);
     }
 
     @Override
-    public LinkedHashSet<Integer> getLikes(int filmId) {
-        return new LinkedHashSet<>(jdbc.query(FIND_LIKES_BY_ID_QUERY,
-                (rs, rowNum) -> rs.getInt("user_id"), filmId));
+    public IntSet getLikes(int filmId) {
+        return likeIndex.likersOf(List.of(filmId)).getOrDefault(filmId, IntSet.EMPTY);
     }
 
     @Override
@@ -437,6 +597,9 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
             log.trace("Для фильма {} добавляю режиссера {}", filmId, directorId);
 
             update(INSERT_FILM_DIRECTOR_QUERY, filmId, directorId);
+            searchIndex.linkDirector(filmId, directorId);
+            filmCache.invalidate(filmId);
+            directorFilmsCache.invalidateDirectors(List.of(directorId));
         } catch (SQLWarningException e) {
             throw new DuplicatedDataException(String.format("Для фильма %s режиссер %s уже установлен. %s",
                     filmId, directorId, e.getSQLWarning()));
@@ -444,161 +607,163 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     }
 
     @Override
-    public Collection<Film> getCommonFilms(int userId, int friendId) {
-        return findMany(FIND_COMMON_FILMS, userId, friendId)
-                .stream()
-                .peek(i -> {
-                    try {
-                        foldFilm(i.getId(), i);
-                    } catch (NotFoundException ignored) {
+    public Collection<Film> getCommonFilms(int userId, int friendId, Set<FilmPart> parts) {
+        Map<Integer, Integer> likes = new HashMap<>();
 
-                    }
-                })
-                .toList();
+        for (Integer filmId : likeIndex.common(userId, friendId)) {
+            likes.put(filmId, likeIndex.likes(filmId));
+        }
+
+        //Порядок как у прежнего ORDER BY likes_count
+        return findByIds(likes.keySet().stream()
+                .sorted(Comparator.comparing((Integer filmId) -> likes.get(filmId)).thenComparing(filmId -> filmId))
+                .toList(), parts);
     }
 
-    private void foldFilm(Integer id, Film result) throws NotFoundException {
-        List<Integer> likes = jdbc.queryForList("SELECT user_id FROM liked_user WHERE film_id = ?",
-                Integer.class, id);
-        Set<Genre> resultGenres = new TreeSet<>(Comparator.comparingInt(Genre::getId));
-        LinkedHashSet<Director> directors = new LinkedHashSet<>(directorDbStorage.findObjectByFilm(id));
+    @Override
+    public List<Film> getRecommendations(int userId, Set<FilmPart> parts) {
+        return findByIds(likeIndex.recommend(userId), parts);
+    }
 
-        resultGenres.addAll(genreStorage.getGenreObjectByFilm(id));
+    private List<Film> findByIds(List<Integer> ids, Set<FilmPart> parts) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        result.setGenres(resultGenres);
-        result.setLikedUsers(Set.copyOf(likes));
-        result.setDirectors(directors);
-    }
+        Map<Integer, Film> films = new HashMap<>();
 
-    private List<Film> findAllByGenre(int genreId) {
-        return findMany("SELECT id, name, description, release_date, duration, rating_id FROM films AS f LEFT OUTER JOIN liked_user AS l ON f.id = l.film_id WHERE f.id IN (SELECT film_id FROM film_genre WHERE genre_id = ?) GROUP BY f.id ORDER BY COUNT(l.user_id) DESC", genreId)
-                .stream().peek(film -> {
-                    try {
-                        foldFilm(film.getId(), film);
-                    } catch (NotFoundException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).collect(Collectors.toList());
+        for (Film film : findMany(String.format(FIND_BY_IDS_QUERY, placeholders(ids.size())), ids.toArray())) {
+            films.put(film.getId(), film);
+        }
+
+        return foldFilms(ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(ArrayList::new)), parts);
     }
 
-    private List<Film> findAllByYear(int year) {
-        return findMany("SELECT id, name, description, release_date, duration, rating_id FROM films AS f LEFT OUTER JOIN liked_user AS l ON f.id = l.film_id WHERE EXTRACT(YEAR FROM f.release_date) = ? GROUP BY f.id ORDER BY COUNT(l.user_id) DESC", year)
-                .stream().peek(film -> {
-                    try {
-                        foldFilm(film.getId(), film);
-                    } catch (NotFoundException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).collect(Collectors.toList());
+    /**
+     * Подгружает только запрошенные связанные данные, остальные поля остаются null.
+     */
+    private List<Film> foldFilms(List<Film> films, Set<FilmPart> parts) {
+        for (int from = 0; from < films.size(); from += HYDRATION_CHUNK_SIZE) {
+            foldChunk(films.subList(from, Math.min(from + HYDRATION_CHUNK_SIZE, films.size())), parts);
+        }
+
+        return films;
     }
 
-    private List<Film> findAllByGenreAndYear(int genreId, int year) {
-        return findMany("SELECT id, name, description, release_date, duration, rating_id FROM films AS f LEFT OUTER JOIN liked_user AS l ON f.id = l.film_id WHERE f.id IN (SELECT film_id FROM film_genre WHERE genre_id = ?) AND EXTRACT(YEAR FROM f.release_date) = ? GROUP BY f.id ORDER BY COUNT(l.user_id) DESC", genreId, year)
-                .stream().peek(film -> {
-                    try {
-                        foldFilm(film.getId(), film);
-                    } catch (NotFoundException e) {
-                        throw new RuntimeException(e);
-                    }
-        }).collect(Collectors.toList());
+    private void foldChunk(List<Film> films, Set<FilmPart> parts) {
+        List<Integer> ids = films.stream().map(Film::getId).distinct().toList();
+
+        if (parts.contains(FilmPart.LIKES)) {
+            Map<Integer, IntSet> likes = likeIndex.likersOf(ids);
+
+            films.forEach(film -> film.setLikedUsers(likes.getOrDefault(film.getId(), IntSet.EMPTY)));
+        }
+        if (parts.contains(FilmPart.GENRES)) {
+            Map<Integer, List<Genre>> genres = genreStorage.getGenreObjectsByFilms(ids);
+
+            for (Film film : films) {
+                Set<Genre> resultGenres = new TreeSet<>(Comparator.comparingInt(Genre::getId));
+                resultGenres.addAll(genres.getOrDefault(film.getId(), List.of()));
+
+                film.setGenres(resultGenres);
+            }
+        }
+        if (parts.contains(FilmPart.DIRECTORS)) {
+            Map<Integer, List<Director>> directors = directorDbStorage.findObjectsByFilms(ids);
+
+            films.forEach(film -> film.setDirectors(
+                    new LinkedHashSet<>(directors.getOrDefault(film.getId(), List.of()))));
+        }
     }
 
     @Override
     public Collection<Film> getUsersLikedFilms(int userId) {
-        return findMany(GET_USERS_FILMS_QUERY, userId).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+        return findByIds(likeIndex.filmsOf(userId), FilmPart.ALL);
     }
 
     @Override
-    public Collection<Film> searchByTitle(String query) {
-        return findMany(SEARCH_BY_TITLE_QUERY, query).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+    public List<Film> search(String query, boolean byTitle, boolean byDirector, FilmCursor after, int limit,
+                             Set<FilmPart> parts) {
+        Set<Integer> ids = searchIndex.search(query, byTitle, byDirector);
+
+        return findByIds(popularityIndex.rank(ids, after, limit), parts);
     }
 
     @Override
-    public Collection<Film> searchByDirector(String query) {
-        return findMany(SEARCH_BY_DIRECTOR_QUERY, query).stream().peek(film -> {
-            try {
-                foldFilm(film.getId(), film);
-            } catch (NotFoundException e) {
-                throw new RuntimeException(e);
-            }
-        }).collect(Collectors.toList());
+    public List<FilmSuggestion> suggest(String prefix, int limit) {
+        return searchIndex.suggest(prefix, limit);
     }
 
-    private void updateDirectorsForFilm(Film film) throws DuplicatedDataException {
+    private void updateDirectorsForFilm(Film film, boolean created) {
         var filmId = film.getId();
+        var directorIds = linkedIds(film.getDirectors(), Director::getId);
 
-        var directors = film.getDirectors();
-
-        if (directors == null || directors.isEmpty()) {
-            update(DELETE_FROM_FILMS_DIRECTORS_QUERY, filmId);
+        if (directorIds.isEmpty()) {
+            if (!created) {
+                update(DELETE_FROM_FILMS_DIRECTORS_QUERY, filmId);
 
-            log.trace("Очистил всех режиссеров для фильма {}", filmId);
+                log.trace("Очистил всех режиссеров для фильма {}", filmId);
+            }
 
             return;
         }
 
-        var curDirectors = directorDbStorage.findDirectorsIdsByFilmId(filmId);
-
-        for (var director: directors) {
-            var directorId = director.getId();
+        Set<Integer> curDirectors = created ? Set.of() : directorDbStorage.findDirectorsIdsByFilmId(filmId);
 
-            if (curDirectors.contains(directorId)) {
-                curDirectors.remove(directorId);
-            } else {
-                addDirectorId(filmId, directorId);
-            }
-        }
+        applyDiff(INSERT_FILM_DIRECTOR_QUERY, DELETE_FILM_DIRECTOR_QUERY, filmId, curDirectors, directorIds);
 
-        for (var genreIdToRemove: curDirectors) {
-            directorDbStorage.deleteFilmDirector(filmId, genreIdToRemove);
-
-            log.trace("Для фильма {} удалил режиссера {}", filmId, genreIdToRemove);
-        }
+        log.trace("Для фильма {} установлены режиссеры {}", filmId, directorIds);
     }
 
-    private void updateGenresForFilm(Film film) throws CorruptedDataException {
+    private void updateGenresForFilm(Film film, boolean created) {
         var filmId = film.getId();
+        var genreIds = linkedIds(film.getGenres(), Genre::getId);
 
-        var genres = film.getGenres();
+        if (genreIds.isEmpty()) {
+            if (!created) {
+                update(DELETE_FROM_GENRE_QUERY, filmId);
 
-        if (genres == null || genres.isEmpty()) {
-            update(DELETE_FROM_GENRE_QUERY, filmId);
-
-            log.trace("Очистил все жанры для фильма {}", filmId);
+                log.trace("Очистил все жанры для фильма {}", filmId);
+            }
 
             return;
         }
 
-        var curGenres = genreStorage.findGenresIdsByFilmId(filmId);
+        Set<Integer> curGenres = created ? Set.of() : genreStorage.findGenresIdsByFilmId(filmId);
 
-        for (var genre: genres) {
-            var genreId = genre.getId();
+        applyDiff(ADD_GENRE_QUERY, DELETE_GENRE_QUERY, filmId, curGenres, genreIds);
 
-            if (curGenres.contains(genreId)) {
-                curGenres.remove(genreId);
-            } else {
-                update("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?);", filmId, genreId);
+        log.trace("Для фильма {} установлены жанры {}", filmId, genreIds);
+    }
 
-                log.trace("Для фильма {} добавил жанр {}", filmId, genreId);
-            }
-        }
+    /**
+     * Приводит связи фильма к нужному набору: лишние удаляет, недостающие добавляет, каждое одним батчем.
+     */
+    private void applyDiff(String insertQuery, String deleteQuery, int filmId, Set<Integer> current,
+                           Set<Integer> target) {
+        List<Object[]> toDelete = current.stream()
+                .filter(id -> !target.contains(id))
+                .map(id -> new Object[]{filmId, id})
+                .toList();
+        List<Object[]> toInsert = target.stream()
+                .filter(id -> !current.contains(id))
+                .map(id -> new Object[]{filmId, id})
+                .toList();
+
+        batchUpdate(deleteQuery, toDelete);
+        batchUpdate(insertQuery, toInsert);
+    }
 
-        for (var genreIdToRemove: curGenres) {
-            genreStorage.deleteGenreByFilmIdAndGenreId(filmId, genreIdToRemove);
+    private static <T> LinkedHashSet<Integer> linkedIds(Collection<T> items, Function<T, Integer> id) {
+        LinkedHashSet<Integer> ids = new LinkedHashSet<>();
 
-            log.trace("Для фильма {} удалил жанр {}", filmId, genreIdToRemove);
+        if (items != null) {
+            items.forEach(item -> ids.add(id.apply(item)));
         }
+
+        return ids;
     }
 }
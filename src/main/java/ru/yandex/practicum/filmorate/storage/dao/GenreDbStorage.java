@@ -2,57 +2,83 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceCache;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Component
 @Slf4j
 public class GenreDbStorage extends BaseDbStorage<Genre> {
-    private static final String FIND_ALL_QUERY = "SELECT * FROM genre";
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM genre WHERE genre_id = ?";
-    private static final String CONTAINS_QUERY = "SELECT EXISTS(SELECT genre_id FROM genre WHERE genre_id = ?) AS b";
-    private static final String FIND_GENRE_OBJECT_BY_FILM = "SELECT * FROM genre WHERE genre_id IN (" +
-            "SELECT genre_id from film_genre WHERE film_id = ?" +
-            ")";
+    private static final String FIND_ALL_QUERY = "SELECT * FROM genre ORDER BY genre_id";
+    private static final String FIND_GENRES_BY_FILMS_QUERY =
+            "SELECT film_id, genre_id " +
+            "FROM film_genre " +
+            "WHERE film_id IN (%s)";
     private static final String FIND_GENRE_ID_QUERY = "SELECT genre_id FROM film_genre WHERE film_id = ?";
-    private static final String DELETE_BY_FILMID_GENREID = "DELETE film_genre WHERE film_id = ? and genre_id = ?";
+
+    private final ReferenceCache<Genre> genres = new ReferenceCache<>("жанров",
+            () -> findMany(FIND_ALL_QUERY), Genre::getId, genre -> genre.toBuilder().build());
 
     public GenreDbStorage(JdbcTemplate jdbc, RowMapper<Genre> mapper) {
         super(jdbc, mapper);
     }
 
     public Collection<Genre> getGenres() {
-        return findMany(FIND_ALL_QUERY);
+        return genres.all();
     }
 
     public Genre getGenre(Integer id) throws NotFoundException {
-        try {
-            return findOne(FIND_BY_ID_QUERY, id).orElseThrow(() -> new NotFoundException("Не найден жанр " + id));
-        } catch (NotFoundException e) {
+        Genre genre = genres.find(id);
+
+        if (genre == null) {
             log.warn("Не удалось получить жанр {}", id);
-            throw e;
+            throw new NotFoundException("Не найден жанр " + id);
         }
+
+        return genre;
     }
 
-    public Collection<Genre> getGenreObjectByFilm(Integer filmId) {
-        return findMany(FIND_GENRE_OBJECT_BY_FILM, filmId);
+    public Map<Integer, List<Genre>> getGenreObjectsByFilms(Collection<Integer> filmIds) {
+        Map<Integer, List<Genre>> result = new HashMap<>();
+
+        if (filmIds.isEmpty()) {
+            return result;
+        }
+
+        jdbc.query(String.format(FIND_GENRES_BY_FILMS_QUERY, placeholders(filmIds.size())),
+                (RowCallbackHandler) rs -> result
+                        .computeIfAbsent(rs.getInt("film_id"), k -> new ArrayList<>())
+                        .add(genres.find(rs.getInt("genre_id"))),
+                filmIds.toArray());
+
+        return result;
     }
 
     public boolean contains(Integer id) {
-        return jdbc.queryForList(CONTAINS_QUERY, Boolean.class, id).getFirst();
+        return genres.contains(id);
+    }
+
+    public List<Genre> findGenres(Collection<Integer> ids) {
+        return ids.stream().map(genres::find).filter(Objects::nonNull).toList();
+    }
+
+    public List<Integer> findMissing(Collection<Integer> ids) {
+        return ids.stream().filter(id -> !genres.contains(id)).toList();
     }
 
     public LinkedHashSet<Integer> findGenresIdsByFilmId(int filmId) {
         return new LinkedHashSet<>(jdbc.query(FIND_GENRE_ID_QUERY,
                 (rs, rowNum) -> rs.getInt("genre_id"), filmId));
     }
-
-    public void deleteGenreByFilmIdAndGenreId(int filmId, int genreId) {
-        update(DELETE_BY_FILMID_GENREID, filmId, genreId);
-    }
 }
@@ -0,0 +1,341 @@
+package ru.yandex.practicum.filmorate.storage.dao;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dto.FeedOperationType;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.storage.cache.DirectorFilmsCache;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SearchIndex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Запись лайков в liked_user, счетчики films.likes_count и события ленты.
+ * В обычном режиме каждый лайк пишется сразу в своей транзакции. В режиме отложенной записи лайки
+ * копятся в памяти: повторные лайк/дизлайк одного пользователя одному фильму схлопываются в последнее
+ * действие, а в БД все уходит пачками по размеру буфера или по таймеру и при остановке приложения.
+ * Пока лайк лежит в буфере, его не видно ни в БД, ни в индексах.
+ * Пачка, которую не удалось записать max-retries раз подряд, пишется по одному лайку, а лайки,
+ * которые не записались и так, отбрасываются с ошибкой в логе, чтобы не держать буфер вечно.
+ */
+@Component
+@Slf4j
+public class LikeWriteBuffer {
+    //Фильм или пользователь могли быть удалены, пока лайк ждал в буфере
+    private static final String ADD_LIKE_QUERY =
+            "INSERT INTO liked_user (film_id, user_id) " +
+            "SELECT f.id, u.id " +
+            "FROM films AS f, users AS u " +
+            "WHERE f.id = ? AND u.id = ? " +
+            "AND NOT EXISTS(SELECT 1 FROM liked_user AS l WHERE l.film_id = f.id AND l.user_id = u.id)";
+    private static final String DELETE_LIKE_QUERY =
+            "DELETE FROM liked_user " +
+            "WHERE film_id = ? AND user_id = ?";
+    private static final String CHANGE_LIKES_COUNT_QUERY =
+            "UPDATE films SET likes_count = likes_count + ? WHERE id = ?";
+    private static final String FIND_LIKES_COUNTS_QUERY =
+            "SELECT id, likes_count FROM films WHERE id IN (%s)";
+
+    /**
+     * BUFFERED - ответ сразу, последние лайки теряются при аварийном падении;
+     * GROUP_COMMIT - ответ после того, как пачка с лайком записана в БД.
+     */
+    public enum Durability {
+        BUFFERED,
+        GROUP_COMMIT
+    }
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transaction;
+    private final FeedDbStorage feedDbStorage;
+    private final PopularityIndex popularityIndex;
+    private final SearchIndex searchIndex;
+    private final LikeIndex likeIndex;
+    private final FilmCache filmCache;
+    private final DirectorFilmsCache directorFilmsCache;
+    private final boolean enabled;
+    private final int flushSize;
+    private final int maxRetries;
+    private final Durability durability;
+
+    private final Object lock = new Object();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<Like, Boolean> pending = new LinkedHashMap<>();
+    private List<Feed> events = new ArrayList<>();
+    private CompletableFuture<Void> flushed = new CompletableFuture<>();
+    //Сколько раз подряд не удалось записать буфер, меняется только под flushLock
+    private int failures;
+
+    public LikeWriteBuffer(JdbcTemplate jdbc,
+                           PlatformTransactionManager transactionManager,
+                           FeedDbStorage feedDbStorage,
+                           PopularityIndex popularityIndex,
+                           SearchIndex searchIndex,
+                           LikeIndex likeIndex,
+                           FilmCache filmCache,
+                           DirectorFilmsCache directorFilmsCache,
+                           @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                           @Value("${filmorate.likes.write-behind.flush-size:1000}") int flushSize,
+                           @Value("${filmorate.likes.write-behind.max-retries:3}") int maxRetries,
+                           @Value("${filmorate.likes.write-behind.durability:buffered}") String durability) {
+        this.jdbc = jdbc;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.feedDbStorage = feedDbStorage;
+        this.popularityIndex = popularityIndex;
+        this.searchIndex = searchIndex;
+        this.likeIndex = likeIndex;
+        this.filmCache = filmCache;
+        this.directorFilmsCache = directorFilmsCache;
+        this.enabled = enabled;
+        this.flushSize = flushSize;
+        this.maxRetries = maxRetries;
+        this.durability = Durability.valueOf(durability.toUpperCase(Locale.ROOT).replace('-', '_'));
+
+        if (enabled) {
+            log.info("Отложенная запись лайков включена: пачка {}, режим {}", flushSize, this.durability);
+        }
+    }
+
+    public void like(int userId, int filmId, Feed event) {
+        record(new Like(userId, filmId), true, event);
+    }
+
+    public void unlike(int userId, int filmId, Feed event) {
+        record(new Like(userId, filmId), false, event);
+    }
+
+    /**
+     * Записывает накопленное одной транзакцией. Одновременно идет только одна запись,
+     * а новые лайки тем временем копятся в свежем буфере.
+     */
+    @Scheduled(fixedDelayString = "${filmorate.likes.write-behind.flush-interval-ms:200}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Like, Boolean> likes;
+            List<Feed> feed;
+            CompletableFuture<Void> generation;
+
+            synchronized (lock) {
+                if (events.isEmpty()) {
+                    return;
+                }
+
+                likes = pending;
+                feed = events;
+                generation = flushed;
+                pending = new LinkedHashMap<>();
+                events = new ArrayList<>();
+                flushed = new CompletableFuture<>();
+            }
+
+            try {
+                transaction.executeWithoutResult(status -> apply(likes, feed));
+                failures = 0;
+                generation.complete(null);
+
+                log.debug("Записано {} лайков и {} событий", likes.size(), feed.size());
+            } catch (RuntimeException e) {
+                log.error("Не удалось записать {} лайков из буфера", likes.size(), e);
+
+                //В режиме BUFFERED лайки уже подтверждены клиенту, поэтому пачка возвращается в буфер
+                //и пишется на следующем тике. В GROUP_COMMIT ошибку получают сами ждущие запросы
+                if (durability == Durability.BUFFERED) {
+                    if (++failures < maxRetries) {
+                        requeue(likes, feed);
+                    } else {
+                        failures = 0;
+                        applyEach(likes, feed);
+                    }
+                }
+                generation.completeExceptionally(e);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void drain() {
+        if (enabled) {
+            log.info("Дописываем буфер лайков перед остановкой");
+            flush();
+        }
+    }
+
+    /**
+     * Возвращает несостоявшуюся пачку в буфер перед накопленными за время записи лайками,
+     * чтобы более новое действие пользователя с тем же фильмом осталось итоговым.
+     */
+    private void requeue(Map<Like, Boolean> likes, List<Feed> feed) {
+        synchronized (lock) {
+            Map<Like, Boolean> merged = new LinkedHashMap<>(likes);
+            merged.putAll(pending);
+            pending = merged;
+
+            List<Feed> all = new ArrayList<>(feed);
+            all.addAll(events);
+            events = all;
+        }
+    }
+
+    /**
+     * Пишет пачку по одному лайку, чтобы одна битая строка не мешала остальным. Лайк, который
+     * не записался и отдельно, отбрасывается: он уже подтвержден клиенту, поэтому пишем его в лог.
+     */
+    private void applyEach(Map<Like, Boolean> likes, List<Feed> feed) {
+        Map<Like, List<Feed>> feedByLike = feed.stream()
+                .collect(Collectors.groupingBy(event -> new Like(event.getUserId(), event.getEntityId())));
+
+        likes.forEach((like, liked) -> {
+            try {
+                transaction.executeWithoutResult(status ->
+                        apply(Map.of(like, liked), feedByLike.getOrDefault(like, List.of())));
+            } catch (RuntimeException e) {
+                log.error("Отброшен {} пользователя {} фильму {} после {} неудачных записей",
+                        liked ? "лайк" : "дизлайк", like.userId(), like.filmId(), maxRetries, e);
+            }
+        });
+    }
+
+    private void record(Like like, boolean liked, Feed event) {
+        if (!enabled) {
+            transaction.executeWithoutResult(status -> apply(Map.of(like, liked), List.of(event)));
+            return;
+        }
+
+        CompletableFuture<Void> generation;
+        boolean full;
+
+        synchronized (lock) {
+            pending.put(like, liked);
+            events.add(event);
+            generation = flushed;
+            full = pending.size() >= flushSize;
+        }
+
+        //Переполненный буфер пишет тот, кто его переполнил, так запросы сами притормаживают под нагрузкой
+        if (full) {
+            flush();
+        }
+
+        if (durability == Durability.GROUP_COMMIT) {
+            try {
+                generation.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+    }
+
+    private void apply(Map<Like, Boolean> likes, List<Feed> feed) {
+        List<Like> added = new ArrayList<>();
+        List<Like> removed = new ArrayList<>();
+
+        likes.forEach((like, liked) -> (liked ? added : removed).add(like));
+
+        int[] inserted = batch(ADD_LIKE_QUERY, added);
+        int[] deleted = batch(DELETE_LIKE_QUERY, removed);
+        Map<Integer, Integer> deltas = new HashMap<>();
+        //Лайк и дизлайк разных пользователей дают нулевую дельту, но список лайкнувших все равно изменился
+        Set<Integer> changed = new HashSet<>();
+        Set<Like> applied = new HashSet<>();
+
+        for (int i = 0; i < inserted.length; i++) {
+            if (inserted[i] > 0) {
+                deltas.merge(added.get(i).filmId(), 1, Integer::sum);
+                likeIndex.addLike(added.get(i).userId(), added.get(i).filmId());
+                changed.add(added.get(i).filmId());
+                applied.add(added.get(i));
+            }
+        }
+        for (int i = 0; i < deleted.length; i++) {
+            if (deleted[i] > 0) {
+                deltas.merge(removed.get(i).filmId(), -1, Integer::sum);
+                likeIndex.removeLike(removed.get(i).userId(), removed.get(i).filmId());
+                changed.add(removed.get(i).filmId());
+                applied.add(removed.get(i));
+            }
+        }
+
+        deltas.values().removeIf(delta -> delta == 0);
+
+        Map<Integer, Integer> counts = new HashMap<>();
+
+        if (!deltas.isEmpty()) {
+            jdbc.batchUpdate(CHANGE_LIKES_COUNT_QUERY, deltas.entrySet().stream()
+                    .map(delta -> new Object[]{delta.getValue(), delta.getKey()})
+                    .toList());
+            jdbc.query(String.format(FIND_LIKES_COUNTS_QUERY, BaseDbStorage.placeholders(deltas.size())),
+                    (RowCallbackHandler) rs -> {
+                        popularityIndex.setLikes(rs.getInt("id"), rs.getInt("likes_count"));
+                        searchIndex.setLikes(rs.getInt("id"), rs.getInt("likes_count"));
+                        counts.put(rs.getInt("id"), rs.getInt("likes_count"));
+                    }, deltas.keySet().toArray());
+        }
+
+        Map<Integer, IntSet> likers = likeIndex.likersOf(changed);
+
+        changed.forEach(filmId -> likers.putIfAbsent(filmId, IntSet.EMPTY));
+        filmCache.updateLikes(likers, counts);
+        directorFilmsCache.invalidateFilms(deltas.keySet());
+
+        feedDbStorage.addFeeds(appliedEvents(feed, likes, applied));
+    }
+
+    /**
+     * События только для лайков, которые действительно изменили строку: повторный лайк, лайк удаленного
+     * фильма или снятие несуществующего лайка в ленту не попадают. На каждый изменившийся лайк остается
+     * последнее событие с той же операцией, что и итоговое действие.
+     */
+    private static List<Feed> appliedEvents(List<Feed> feed, Map<Like, Boolean> likes, Set<Like> applied) {
+        Set<Like> remaining = new HashSet<>(applied);
+        List<Feed> result = new ArrayList<>();
+
+        for (Feed event : feed.reversed()) {
+            Like like = new Like(event.getUserId(), event.getEntityId());
+            String operation = Boolean.TRUE.equals(likes.get(like)) ? FeedOperationType.ADD.name() : FeedOperationType.REMOVE.name();
+
+            if (operation.equals(event.getOperation()) && remaining.remove(like)) {
+                result.add(event);
+            }
+        }
+
+        return result.reversed();
+    }
+
+    private int[] batch(String query, List<Like> likes) {
+        if (likes.isEmpty()) {
+            return new int[0];
+        }
+
+        return jdbc.batchUpdate(query, likes.stream()
+                .map(like -> new Object[]{like.filmId(), like.userId()})
+                .toList());
+    }
+
+    private record Like(int userId, int filmId) {
+    }
+}
@@ -6,39 +6,43 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceCache;
 
 import java.util.Collection;
+import java.util.Optional;
 
 @Component
 @Slf4j
 public class RatingDbStorage extends BaseDbStorage<Rating> {
-    private static final String FIND_ALL_QUERY = "SELECT * FROM rating";
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM rating WHERE rating_id = ?";
-    private static final String CONTAINS_QUERY = "SELECT EXISTS(SELECT rating_id FROM rating WHERE rating_id = ?) AS b";
-    private static final String FIND_RATING_ID_QUERY = "SELECT rating_id FROM films AS f WHERE id = ?";
+    private static final String FIND_ALL_QUERY = "SELECT * FROM rating ORDER BY rating_id";
+
+    private final ReferenceCache<Rating> ratings = new ReferenceCache<>("рейтингов",
+            () -> findMany(FIND_ALL_QUERY), Rating::getId, rating -> rating.toBuilder().build());
 
     public RatingDbStorage(JdbcTemplate jdbc, RowMapper<Rating> mapper) {
         super(jdbc, mapper);
     }
 
     public Collection<Rating> getRatings() {
-        return findMany(FIND_ALL_QUERY);
+        return ratings.all();
     }
 
     public Rating getRating(Integer id) throws NotFoundException {
-        try {
-            return findOne(FIND_BY_ID_QUERY, id).orElseThrow(() -> new NotFoundException("Не найден рейтинг " + id));
-        } catch (NotFoundException e) {
+        Rating rating = ratings.find(id);
+
+        if (rating == null) {
             log.warn("Не удалось получить рейтинг {}", id);
-            throw e;
+            throw new NotFoundException("Не найден рейтинг " + id);
         }
+
+        return rating;
     }
 
-    public boolean contains(Integer id) {
-        return jdbc.queryForList(CONTAINS_QUERY, Boolean.class, id).getFirst();
+    public Optional<Rating> findRating(Integer id) {
+        return Optional.ofNullable(ratings.find(id));
     }
 
-    public Integer findRatingIdByFilmId(int filmId) {
-        return jdbc.queryForObject(FIND_RATING_ID_QUERY, Integer.class, filmId);
+    public boolean contains(Integer id) {
+        return ratings.contains(id);
     }
 }
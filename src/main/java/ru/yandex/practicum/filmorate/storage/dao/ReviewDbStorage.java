@@ -3,43 +3,37 @@ package ru.yandex.practicum.filmorate.storage.dao;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.dao.mappers.ReviewRowMapper;
 
 import java.util.List;
+import java.util.Optional;
 
 @Component
 @Slf4j
 public class ReviewDbStorage extends BaseDbStorage<Review> {
     private static final String FIND_ALL_QUERY =
-            "SELECT r.review_id, r.content, r.isPositive, r.film_id, r.user_id, sum(l.useful) useful " +
-                    "FROM reviews r " +
-                    "   left join reviewLikes l on l.review_id = r.review_id " +
-                    "GROUP BY r.review_id, r.content, r.isPositive, r.film_id, r.user_id " +
+            "SELECT review_id, content, isPositive, film_id, user_id, useful " +
+                    "FROM reviews " +
                     "ORDER BY useful desc";
     private static final String FIND_BY_ID_QUERY =
-            "SELECT r.review_id, r.content, r.isPositive, r.film_id, r.user_id, sum(l.useful) useful " +
-                    "FROM reviews r " +
-                    "   left join reviewLikes l on l.review_id = r.review_id " +
-                    "WHERE r.review_id = ? " +
-                    "GROUP BY r.review_id, r.content, r.isPositive, r.film_id, r.user_id";
+            "SELECT review_id, content, isPositive, film_id, user_id, useful " +
+                    "FROM reviews " +
+                    "WHERE review_id = ?";
     private static final String CONTAINS_QUERY =
             "SELECT EXISTS(SELECT 1 FROM reviews WHERE review_id = ?) AS b";
     private static final String FIND_MOSTPOPULAR_BY_FILMID =
-            "SELECT r.review_id, r.content, r.isPositive, r.film_id, r.user_id, sum(l.useful) useful " +
-            "FROM reviews r " +
-            "   left join reviewLikes l on l.review_id = r.review_id " +
-            "WHERE r.film_id = ? " +
-            "GROUP BY r.review_id, r.content, r.isPositive, r.film_id, r.user_id " +
-            "ORDER BY CASE WHEN useful IS NULL THEN 0 ELSE USEFUL end desc " +
+            "SELECT review_id, content, isPositive, film_id, user_id, useful " +
+            "FROM reviews " +
+            "WHERE film_id = ? " +
+            "ORDER BY useful desc " +
             "LIMIT ?";
     private static final String FIND_MOSTPOPULAR =
-            "SELECT r.review_id, r.content, r.isPositive, r.film_id, r.user_id, sum(l.useful) useful " +
-            "FROM reviews r " +
-            "   left join reviewLikes l on l.review_id = r.review_id " +
-            "GROUP BY r.review_id, r.content, r.isPositive, r.film_id, r.user_id " +
-            "ORDER BY CASE WHEN useful IS NULL THEN 0 ELSE USEFUL end desc " +
+            "SELECT review_id, content, isPositive, film_id, user_id, useful " +
+            "FROM reviews " +
+            "ORDER BY useful desc " +
             "LIMIT ?";
     private static final String ADD_QUERY =
             "INSERT INTO reviews (content, isPositive, film_id, user_id) " +
@@ -59,16 +53,20 @@ public class ReviewDbStorage extends BaseDbStorage<Review> {
     private static final String UPDATE_LIKE =
             "UPDATE reviewLikes set useful = ? " +
                     "where review_id = ? and user_id = ?";
-    private static final String CONTAINS_LIKE_QUERY =
-            "SELECT EXISTS(SELECT 1 FROM reviewLikes WHERE review_id = ? and user_id = ?) AS b";
+    //Блокировка строки отзыва выстраивает оценки одного отзыва в очередь: прежняя оценка читается
+    //уже под замком, и дельта к счетчику не расходится при одновременных голосах
+    private static final String LOCK_REVIEW_QUERY =
+            "SELECT review_id FROM reviews WHERE review_id = ? FOR UPDATE";
+    private static final String FIND_LIKE_QUERY =
+            "SELECT useful FROM reviewLikes WHERE review_id = ? and user_id = ?";
+    //Новое значение счетчика возвращает сам UPDATE, без отдельного чтения
+    private static final String CHANGE_USEFUL_QUERY =
+            "SELECT useful FROM FINAL TABLE (" +
+                    "UPDATE reviews SET useful = useful + ? WHERE review_id = ?)";
+    //Оценки отзывов удаляются каскадом по внешнему ключу reviewLikes.review_id
     private static final String DELETE_REVIEWS_BY_FILMID =
-            "set @filmId = ? " +
-                    "DELETE reviewLikes " +
-                    "WHERE exists(select 1 " +
-                    "             FROM reviews " +
-                    "             WHERE film_id = @filmId) " +
-                    "DELETE reviews " +
-                    "WHERE film_id = @filmId";
+            "DELETE reviews " +
+                    "WHERE film_id = ?";
 
 
     public ReviewDbStorage(JdbcTemplate jdbc, ReviewRowMapper mapper) {
@@ -118,24 +116,47 @@ public class ReviewDbStorage extends BaseDbStorage<Review> {
         update(DELETE_REVIEW, id);
     }
 
-    public boolean containsReviewLike(int reviewId, int userid) {
-        return jdbc.queryForList(CONTAINS_LIKE_QUERY, Boolean.class, reviewId, userid)
-                .getFirst();
-    }
+    /**
+     * Ставит или меняет оценку пользователя и возвращает новое значение счетчика полезности.
+     */
+    @Transactional
+    public int addReviewLike(int reviewId, int userid, int useful) {
+        Optional<Integer> oldUseful = lockReviewLike(reviewId, userid);
+
+        if (oldUseful.isPresent()) {
+            update(UPDATE_LIKE, useful, reviewId, userid);
+            return changeUseful(reviewId, useful - oldUseful.get());
+        }
 
-    public void addReviewLike(int reviewId, int userid, int useful) {
         update(ADD_LIKE, reviewId, userid, useful);
+        return changeUseful(reviewId, useful);
     }
 
-    public void deleteReviewLike(int reviewId, int userid) {
+    /**
+     * Снимает оценку пользователя. Пустой результат, если оценки не было.
+     */
+    @Transactional
+    public Optional<Integer> deleteReviewLike(int reviewId, int userid) {
+        Optional<Integer> oldUseful = lockReviewLike(reviewId, userid);
+
+        if (oldUseful.isEmpty()) {
+            return Optional.empty();
+        }
+
         update(DELETE_LIKE, reviewId, userid);
+        return Optional.of(changeUseful(reviewId, -oldUseful.get()));
     }
 
     public void deleteReviewsByFilmId(int filmId) {
         update(DELETE_REVIEWS_BY_FILMID, filmId);
     }
 
-    public void updateReviewLike(int reviewId, int userid, int useful) {
-        update(UPDATE_LIKE, useful, reviewId, userid);
+    private Optional<Integer> lockReviewLike(int reviewId, int userid) {
+        jdbc.queryForList(LOCK_REVIEW_QUERY, Integer.class, reviewId);
+        return jdbc.queryForList(FIND_LIKE_QUERY, Integer.class, reviewId, userid).stream().findFirst();
+    }
+
+    private int changeUseful(int reviewId, int delta) {
+        return jdbc.queryForObject(CHANGE_USEFUL_QUERY, Integer.class, delta, reviewId);
     }
 }
@@ -2,18 +2,36 @@ package ru.yandex.practicum.filmorate.storage.dao;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dto.FeedEventType;
 import ru.yandex.practicum.filmorate.dto.FeedOperationType;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.DirectorFilmsCache;
+import ru.yandex.practicum.filmorate.storage.cache.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.FriendSuggestionsCache;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SearchIndex;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 @Component
@@ -22,22 +40,9 @@ import java.util.Set;
 public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     private static final String FIND_ALL_QUERY = "SELECT * FROM users";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM users WHERE id = ?";
-    private static final String FIND_FRIENDS_QUERY =
-            "SELECT u.* " +
-            "FROM friends f " +
-            "   JOIN users u on u.id = f.recipient " +
-            "WHERE f.sender = ?";
-    private static final String FIND_MUTUAL_FRIEND_QUERY =
-            "SELECT u.* " +
-            "FROM users u " +
-            "   JOIN(SELECT recipient " +
-            "        FROM friends " +
-            "        WHERE sender = ? " +
-            "        INTERSECT " +
-            "        SELECT recipient " +
-            "        FROM friends " +
-            "        WHERE sender = ? " +
-            "       ) f on f.recipient = u.id";
+    //Сколько возможных знакомых считаем и кэшируем, больший limit обрезается
+    private static final int SUGGESTIONS_TOP = 100;
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM users WHERE id IN (%s) ORDER BY id";
     private static final String ADD_QUERY = "INSERT INTO users (email, login, name, birthday) " +
             "VALUES (?, ?, ?, ?)";
 
@@ -47,22 +52,56 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     private static final String UPDATE_USER_QUERY = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? " +
             "WHERE id = ?";
     private static final String UPDATE_FRIENDS_STATUS = "UPDATE friends SET confirmed = ? " +
-                                                        "WHERE sender = ? AND recipient = ?" +
-                                                        "OR sender = ? AND recipient = ?";
+                                                        "WHERE (sender, recipient) IN ((?, ?), (?, ?))";
     private static final String DELETE_QUERY = "DELETE FROM users WHERE id = ?";
-    private static final String DELETE_FROM_FRIEND_QUERY = "DELETE FROM friends WHERE recipient = ? or sender = ?";
+    private static final String DELETE_SENT_FRIENDS_QUERY = "DELETE FROM friends WHERE sender = ?";
+    private static final String DELETE_RECEIVED_FRIENDS_QUERY = "DELETE FROM friends WHERE recipient = ?";
+    //Счетчики лайков уменьшаются до удаления самих лайков, новые значения сразу уходят в индексы
+    private static final String UNCOUNT_USER_LIKES_QUERY =
+            "SELECT id, likes_count FROM FINAL TABLE (" +
+                    "UPDATE films SET likes_count = likes_count - 1 " +
+                    "WHERE id IN (SELECT film_id FROM liked_user WHERE user_id = ?))";
+    private static final String DELETE_USER_LIKES_QUERY = "DELETE FROM liked_user WHERE user_id = ?";
     private static final String DELETE_FRIEND_QUERY = "DELETE FROM friends WHERE recipient = ? AND sender = ?";
     private static final String CONTAINS_QUERY = "SELECT EXISTS(SELECT id FROM users WHERE id = ?) AS b";
+    private static final String EMAIL_TAKEN_QUERY =
+            "SELECT EXISTS(SELECT id FROM users WHERE email = ? AND id <> ?) AS b";
+    private static final String LOGIN_TAKEN_QUERY =
+            "SELECT EXISTS(SELECT id FROM users WHERE login = ? AND id <> ?) AS b";
 
     private final FeedDbStorage feedDbStorage;
+    private final LikeIndex likeIndex;
+    private final PopularityIndex popularityIndex;
+    private final SearchIndex searchIndex;
+    private final FriendGraph friendGraph;
+    private final FilmCache filmCache;
+    private final DirectorFilmsCache directorFilmsCache;
+    private final FriendSuggestionsCache suggestionsCache;
+    private final EntityVersions versions;
 
     public UserDbStorage(
             JdbcTemplate jdbc,
             RowMapper<User> mapper,
-            FeedDbStorage feedDbStorage) {
+            FeedDbStorage feedDbStorage,
+            LikeIndex likeIndex,
+            PopularityIndex popularityIndex,
+            SearchIndex searchIndex,
+            FriendGraph friendGraph,
+            FilmCache filmCache,
+            DirectorFilmsCache directorFilmsCache,
+            FriendSuggestionsCache suggestionsCache,
+            EntityVersions versions) {
         super(jdbc, mapper);
 
         this.feedDbStorage = feedDbStorage;
+        this.likeIndex = likeIndex;
+        this.popularityIndex = popularityIndex;
+        this.searchIndex = searchIndex;
+        this.friendGraph = friendGraph;
+        this.filmCache = filmCache;
+        this.directorFilmsCache = directorFilmsCache;
+        this.suggestionsCache = suggestionsCache;
+        this.versions = versions;
     }
 
     @Override
@@ -73,13 +112,9 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     @Override
     public User getUser(Integer id) throws NotFoundException {
         try {
-            Collection<User> friends = getFriends(id);
-            User user = findOne(FIND_BY_ID_QUERY, id)
-                    .orElseThrow(() -> new NotFoundException("Не найден пользователь " + id));
+            User user = findUser(id).orElseThrow(() -> new NotFoundException("Не найден пользователь " + id));
 
-            for (User friend : friends) {
-                user.addFriend(friend, true);
-            }
+            user.setFriends(friendGraph.friendsOf(id));
 
             return user;
         } catch (NotFoundException e) {
@@ -88,31 +123,100 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         }
     }
 
+    //Только строка пользователя, id друзей догружаются через getFriendIds, если понадобятся
+    @Override
+    public Optional<User> findUser(int id) {
+        return findOne(FIND_BY_ID_QUERY, id);
+    }
+
+    @Override
+    public IntSet getFriendIds(int id) {
+        return friendGraph.friendsOf(id);
+    }
+
+    @Override
+    public boolean isFriend(int userId, int friendId) {
+        return friendGraph.isFriend(userId, friendId);
+    }
+
     @Override
     public Collection<User> getFriends(Integer id) {
-        return findMany(FIND_FRIENDS_QUERY, id);
+        return findByIds(friendGraph.friendsOf(id));
+    }
+
+    //Страница id режется из графа, из БД догружаются только пользователи страницы
+    @Override
+    public List<User> getFriends(int id, int after, int limit) {
+        return findByIds(friendGraph.friendsOf(id, after, limit));
+    }
+
+    @Override
+    public int getFriendsCount(int id) {
+        return friendGraph.degree(id);
     }
 
     @Override
     public Set<User> getMutualFriend(Integer id1, Integer id2) {
-        return Set.copyOf(findMany(FIND_MUTUAL_FRIEND_QUERY, id1, id2));
+        return Set.copyOf(findByIds(friendGraph.mutual(id1, id2)));
+    }
+
+    @Override
+    public List<User> getMutualFriends(int id1, int id2, int after, int limit) {
+        return findByIds(friendGraph.mutual(id1, id2, after, limit));
+    }
+
+    @Override
+    public List<User> getFriendSuggestions(int id, int limit) {
+        List<Integer> ids = suggestionsCache.get(id, userId -> friendGraph.suggest(userId, SUGGESTIONS_TOP));
+        List<Integer> page = ids.subList(0, Math.min(limit, ids.size()));
+
+        if (page.isEmpty()) {
+            return List.of();
+        }
+
+        List<User> users = findMany(String.format(FIND_BY_IDS_QUERY, placeholders(page.size())), page.toArray());
+
+        users.sort(Comparator.comparingInt(user -> page.indexOf(user.getId())));
+
+        return users;
+    }
+
+    //Списки id берутся из графа, из БД одним запросом догружаются только сами пользователи
+    private List<User> findByIds(IntSet ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+
+        return findMany(String.format(FIND_BY_IDS_QUERY, placeholders(ids.size())), ids.toArray());
     }
 
     @Override
-    public Integer addUser(User user) throws NotFoundException {
-        int id = (int) insert(ADD_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+    public Integer addUser(User user) throws NotFoundException, DuplicatedDataException {
+        int id;
+
+        try {
+            id = insert(ADD_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        } catch (DuplicateKeyException e) {
+            throw duplicated(user, e);
+        }
         user.setId(id);
 
 
         for (Integer friendId: user.getFriends()) {
-            User friend = getUser(friendId);
+            if (!contains(friendId)) {
+                throw new NotFoundException("Не найден пользователь " + friendId);
+            }
 
-            if (friend.getFriends().contains(id) && friend.isFriendConfirm(id)) {
+            if (friendGraph.isFriend(friendId, id)) {
                 update(UPDATE_FRIENDS_STATUS, true, id, friendId, friendId, id);
             } else {
                 update(ADD_FRIEND_QUERY, id, friendId, user.isFriendConfirm(friendId));
+                friendGraph.addFriend(id, friendId);
+                friendsChanged(id, friendId);
             }
         }
+
+        versions.bumpFriends(List.of(id));
         return user.getId();
     }
 
@@ -128,8 +232,12 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
             jdbc.update(UPDATE_FRIENDS_STATUS, true, id, friendId, friendId, id);
         } else {
             jdbc.update(ADD_FRIEND_QUERY, id, friendId, true);
+            friendGraph.addFriend(id, friendId);
+            friendsChanged(id, friendId);
         }
 
+        versions.bumpFriends(List.of(id, friendId));
+
         feedDbStorage.addFeed(Feed.builder()
                 .userId(id)
                 .timestamp(new Date().getTime())
@@ -140,23 +248,59 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     }
 
     @Override
-    public void updateUser(User user) {
+    public void updateUser(User user) throws DuplicatedDataException {
         int id = user.getId();
-        update(UPDATE_USER_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), id);
+
+        try {
+            update(UPDATE_USER_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), id);
+        } catch (DuplicateKeyException e) {
+            throw duplicated(user, e);
+        }
+        //Пользователь виден в списках друзей всех, кто его добавил
+        versions.bumpFriends(friendGraph.followersOf(id));
     }
 
+    //Индексы и кэши правятся только после всех удалений: если какое-то из них упадет, транзакция
+    //откатится, а граф друзей и версии останутся как в базе
     @Override
+    @Transactional
     public void deleteUser(Integer id) {
         feedDbStorage.deleteFeedByUserId(id);
 
-        update(DELETE_FROM_FRIEND_QUERY, id, id);
+        Map<Integer, Integer> likesCounts = new HashMap<>();
+        jdbc.query(UNCOUNT_USER_LIKES_QUERY, rs -> {
+            likesCounts.put(rs.getInt("id"), rs.getInt("likes_count"));
+        }, id);
+        update(DELETE_USER_LIKES_QUERY, id);
+
+        //Два запроса вместо одного с OR, чтобы каждый шел по своему индексу
+        update(DELETE_SENT_FRIENDS_QUERY, id);
+        update(DELETE_RECEIVED_FRIENDS_QUERY, id);
         delete(DELETE_QUERY, id);
+
+        List<Integer> followers = new ArrayList<>(friendGraph.followersOf(id));
+
+        followers.add(id);
+        versions.bumpFriends(followers);
+        friendGraph.removeUser(id);
+        suggestionsCache.invalidateAll();
+
+        likesCounts.forEach((filmId, count) -> {
+            popularityIndex.setLikes(filmId, count);
+            searchIndex.setLikes(filmId, count);
+        });
+        filmCache.invalidate(likesCounts.keySet());
+        directorFilmsCache.invalidateFilms(likesCounts.keySet());
+        likeIndex.removeUser(id);
     }
 
     @Override
-    public void deleteFriend(Integer recipient, Integer sender) throws NotFoundException {
-        if (getFriends(sender).contains(getUser(recipient))) {
+    public void deleteFriend(Integer recipient, Integer sender) {
+        if (friendGraph.isFriend(sender, recipient)) {
             update(DELETE_FRIEND_QUERY, recipient, sender);
+            friendGraph.removeFriend(sender, recipient);
+            friendsChanged(sender, recipient);
+            versions.bumpFriends(List.of(sender));
 
             feedDbStorage.addFeed(Feed.builder()
                     .userId(sender)
@@ -168,11 +312,48 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         }
     }
 
+    @Override
+    public String getFriendsTag(int id) {
+        return versions.friendsTag(id);
+    }
+
     @Override
     public boolean contains(Integer id) {
         return jdbc.queryForList(CONTAINS_QUERY, Boolean.class, id).getFirst();
     }
 
+    @Override
+    public boolean isEmailTaken(String email, int exceptUserId) {
+        return jdbc.queryForList(EMAIL_TAKEN_QUERY, Boolean.class, email, exceptUserId).getFirst();
+    }
+
+    @Override
+    public boolean isLoginTaken(String login, int exceptUserId) {
+        return jdbc.queryForList(LOGIN_TAKEN_QUERY, Boolean.class, login, exceptUserId).getFirst();
+    }
+
+    //Проверка в сервисе не спасает от гонки двух запросов, окончательно уникальность проверяет индекс
+    private static DuplicatedDataException duplicated(User user, DuplicateKeyException e) {
+        String message = String.valueOf(e.getMessage()).toUpperCase();
+
+        if (message.contains("USERS_LOGIN_UQ")) {
+            return new DuplicatedDataException("Логин " + user.getLogin() + " уже используется");
+        }
+        if (message.contains("USERS_EMAIL_UQ")) {
+            return new DuplicatedDataException("Этот email уже используется");
+        }
+
+        return new DuplicatedDataException(e.getMessage());
+    }
+
+    //Дружба userId -> friendId меняет подсказки userId и всех, у кого friendId тоже в друзьях
+    private void friendsChanged(int userId, int friendId) {
+        List<Integer> affected = new ArrayList<>(friendGraph.followersOf(friendId));
+
+        affected.add(userId);
+        suggestionsCache.invalidate(affected);
+    }
+
     @Override
     public Collection<Feed> getFeeds(int userId) {
         return feedDbStorage.getFeedByUserId(userId);
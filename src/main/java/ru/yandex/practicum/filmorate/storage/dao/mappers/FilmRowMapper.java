@@ -32,6 +32,7 @@ public class FilmRowMapper implements RowMapper<Film> {
                             BaseDbStorage.formatterForBdDate))
                     .duration(rs.getInt("duration"))
                     .rating(storage.getRating(rs.getInt("rating_id")))
+                    .likesCount(rs.getInt("likes_count"))
                     .build();
         } catch (NotFoundException e) {
             log.warn("Ошибка преобразования фильма");
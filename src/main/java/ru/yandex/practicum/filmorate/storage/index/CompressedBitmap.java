@@ -0,0 +1,410 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Множество неотрицательных int в духе Roaring: старшие 16 бит выбирают контейнер, а младшие хранятся
+ * отсортированным массивом, пока их не больше ARRAY_MAX, и битовой картой на 65536 бит, когда их больше.
+ * Не потокобезопасно, синхронизацию обеспечивает владелец.
+ */
+final class CompressedBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1 << 10;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+    private int cardinality;
+
+    boolean add(int value) {
+        char high = (char) (value >>> 16);
+        int idx = find(high);
+
+        if (idx < 0) {
+            idx = -idx - 1;
+            insertContainer(idx, high, new ArrayContainer());
+        }
+
+        int before = containers[idx].cardinality();
+
+        containers[idx] = containers[idx].add((char) value);
+
+        if (containers[idx].cardinality() == before) {
+            return false;
+        }
+
+        cardinality++;
+
+        return true;
+    }
+
+    boolean remove(int value) {
+        int idx = find((char) (value >>> 16));
+
+        if (idx < 0) {
+            return false;
+        }
+
+        int before = containers[idx].cardinality();
+
+        containers[idx] = containers[idx].remove((char) value);
+
+        if (containers[idx].cardinality() == before) {
+            return false;
+        }
+
+        cardinality--;
+
+        if (containers[idx].cardinality() == 0) {
+            removeContainer(idx);
+        }
+
+        return true;
+    }
+
+    boolean contains(int value) {
+        int idx = find((char) (value >>> 16));
+
+        return idx >= 0 && containers[idx].contains((char) value);
+    }
+
+    int cardinality() {
+        return cardinality;
+    }
+
+    boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = containers[i].and(other.containers[j]);
+
+                if (container.cardinality() > 0) {
+                    result.insertContainer(result.size, keys[i], container);
+                    result.cardinality += container.cardinality();
+                }
+
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    int andCardinality(CompressedBitmap other) {
+        int result = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    int[] toArray() {
+        int[] result = new int[cardinality];
+        int[] idx = {0};
+
+        forEach(value -> result[idx[0]++] = value);
+
+        return result;
+    }
+
+    private int find(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    private void insertContainer(int idx, char high, Container container) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+
+        System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+        System.arraycopy(containers, idx, containers, idx + 1, size - idx);
+        keys[idx] = high;
+        containers[idx] = container;
+        size++;
+    }
+
+    private void removeContainer(int idx) {
+        System.arraycopy(keys, idx + 1, keys, idx, size - idx - 1);
+        System.arraycopy(containers, idx + 1, containers, idx, size - idx - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    private interface Container {
+        Container add(char value);
+
+        Container remove(char value);
+
+        boolean contains(char value);
+
+        int cardinality();
+
+        Container and(Container other);
+
+        int andCardinality(Container other);
+
+        void forEach(int base, IntConsumer action);
+    }
+
+    private static final class ArrayContainer implements Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        @Override
+        public Container add(char value) {
+            int idx = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (idx >= 0) {
+                return this;
+            }
+
+            if (cardinality == ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+
+            idx = -idx - 1;
+
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, cardinality * 2));
+            }
+
+            System.arraycopy(values, idx, values, idx + 1, cardinality - idx);
+            values[idx] = value;
+            cardinality++;
+
+            return this;
+        }
+
+        @Override
+        public Container remove(char value) {
+            int idx = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (idx >= 0) {
+                System.arraycopy(values, idx + 1, values, idx, cardinality - idx - 1);
+                cardinality--;
+            }
+
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            ArrayContainer result = new ArrayContainer();
+
+            result.values = new char[Math.max(4, cardinality)];
+
+            if (other instanceof ArrayContainer array) {
+                int i = 0;
+                int j = 0;
+
+                while (i < cardinality && j < array.cardinality) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        result.values[result.cardinality++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result.values[result.cardinality++] = values[i];
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            if (!(other instanceof ArrayContainer array)) {
+                return other.andCardinality(this);
+            }
+
+            int result = 0;
+            int i = 0;
+            int j = 0;
+
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    i++;
+                } else if (values[i] > array.values[j]) {
+                    j++;
+                } else {
+                    result++;
+                    i++;
+                    j++;
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.add(values[i]);
+            }
+
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer implements Container {
+        private final long[] words = new long[WORDS];
+        private int cardinality;
+
+        @Override
+        public Container add(char value) {
+            long before = words[value >>> 6];
+
+            words[value >>> 6] |= 1L << value;
+
+            if (words[value >>> 6] != before) {
+                cardinality++;
+            }
+
+            return this;
+        }
+
+        @Override
+        public Container remove(char value) {
+            long before = words[value >>> 6];
+
+            words[value >>> 6] &= ~(1L << value);
+
+            if (words[value >>> 6] != before) {
+                cardinality--;
+            }
+
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (!(other instanceof BitmapContainer bitmap)) {
+                return other.and(this);
+            }
+
+            BitmapContainer result = new BitmapContainer();
+
+            for (int i = 0; i < WORDS; i++) {
+                result.words[i] = words[i] & bitmap.words[i];
+                result.cardinality += Long.bitCount(result.words[i]);
+            }
+
+            return result.cardinality <= ARRAY_MAX ? result.toArray() : result;
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            if (!(other instanceof BitmapContainer bitmap)) {
+                int result = 0;
+                ArrayContainer array = (ArrayContainer) other;
+
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (contains(array.values[i])) {
+                        result++;
+                    }
+                }
+
+                return result;
+            }
+
+            int result = 0;
+
+            for (int i = 0; i < WORDS; i++) {
+                result += Long.bitCount(words[i] & bitmap.words[i]);
+            }
+
+            return result;
+        }
+
+        @Override
+        public void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+
+                while (word != 0) {
+                    action.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray() {
+            ArrayContainer array = new ArrayContainer();
+
+            array.values = new char[Math.max(4, cardinality)];
+            forEach(0, value -> array.values[array.cardinality++] = (char) value);
+
+            return array;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IntSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Граф дружбы: для каждого пользователя отсортированный массив id его друзей и тех, кто добавил его в друзья.
+ * Массивы неизменяемые и при изменении подменяются копией, поэтому читатели получают их без копирования.
+ * Общие друзья считаются слиянием двух массивов, без обращения к friends.
+ */
+@Component
+public class FriendGraph extends InMemoryIndex {
+    private static final String LOAD_QUERY = "SELECT sender, recipient FROM friends";
+    //Друзья с большим числом подписчиков почти ничего не говорят о знакомствах, а обход по ним самый дорогой
+    private static final int MAX_FAN_OUT = 1000;
+    //Пары {id, общих друзей}: больше общих - выше, при равенстве выше меньший id
+    private static final Comparator<int[]> BY_RANK = Comparator.<int[]>comparingInt(c -> c[1])
+            .thenComparing(c -> c[0], Comparator.reverseOrder());
+
+    private final Map<Integer, IntSet> friendsByUser = new HashMap<>();
+    private final Map<Integer, IntSet> followersByUser = new HashMap<>();
+
+    public FriendGraph(JdbcTemplate jdbc) {
+        super(jdbc);
+    }
+
+    public IntSet friendsOf(int userId) {
+        return read(() -> friendsByUser.getOrDefault(userId, IntSet.EMPTY));
+    }
+
+    public IntSet friendsOf(int userId, int after, int limit) {
+        return read(() -> friendsByUser.getOrDefault(userId, IntSet.EMPTY).page(after, limit));
+    }
+
+    //Число друзей - длина массива, отдельный счетчик поддерживать не нужно
+    public int degree(int userId) {
+        return read(() -> friendsByUser.getOrDefault(userId, IntSet.EMPTY).size());
+    }
+
+    public IntSet followersOf(int userId) {
+        return read(() -> followersByUser.getOrDefault(userId, IntSet.EMPTY));
+    }
+
+    public IntSet mutual(int userId, int otherId) {
+        return read(() -> friendsByUser.getOrDefault(userId, IntSet.EMPTY)
+                .intersect(friendsByUser.getOrDefault(otherId, IntSet.EMPTY)));
+    }
+
+    /**
+     * Возможные знакомые: не друзья пользователя, у которых с ним больше всего общих друзей в смысле mutual.
+     * Обход на два шага: друзья пользователя, затем те, кто тоже добавил их в друзья. Кандидаты собираются
+     * в один массив и считаются после сортировки, лучшие limit отбираются кучей.
+     */
+    public List<Integer> suggest(int userId, int limit) {
+        return read(() -> {
+            IntSet friends = friendsByUser.getOrDefault(userId, IntSet.EMPTY);
+            int[] candidates = new int[16];
+            int[] size = {0};
+
+            for (int friendId : friends.toIntArray()) {
+                IntSet followers = followersByUser.getOrDefault(friendId, IntSet.EMPTY);
+
+                if (followers.size() > MAX_FAN_OUT) {
+                    continue;
+                }
+                if (size[0] + followers.size() > candidates.length) {
+                    candidates = Arrays.copyOf(candidates, Math.max(candidates.length * 2, size[0] + followers.size()));
+                }
+
+                int[] target = candidates;
+
+                followers.forEachInt(followerId -> target[size[0]++] = followerId);
+            }
+
+            Arrays.sort(candidates, 0, size[0]);
+
+            PriorityQueue<int[]> top = new PriorityQueue<>(BY_RANK);
+
+            for (int i = 0; i < size[0]; ) {
+                int candidate = candidates[i];
+                int start = i;
+
+                while (i < size[0] && candidates[i] == candidate) {
+                    i++;
+                }
+                if (candidate == userId || friends.contains(candidate)) {
+                    continue;
+                }
+
+                top.add(new int[]{candidate, i - start});
+
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<int[]> ranked = new ArrayList<>(top);
+
+            ranked.sort(BY_RANK.reversed());
+
+            return ranked.stream().map(c -> c[0]).toList();
+        });
+    }
+
+    public IntSet mutual(int userId, int otherId, int after, int limit) {
+        return read(() -> friendsByUser.getOrDefault(userId, IntSet.EMPTY)
+                .intersect(friendsByUser.getOrDefault(otherId, IntSet.EMPTY), after, limit));
+    }
+
+    public boolean isFriend(int userId, int friendId) {
+        return read(() -> friendsByUser.getOrDefault(userId, IntSet.EMPTY).contains(friendId));
+    }
+
+    public void addFriend(int userId, int friendId) {
+        write(() -> {
+            friendsByUser.merge(userId, IntSet.of(friendId), (old, k) -> old.with(friendId));
+            followersByUser.merge(friendId, IntSet.of(userId), (old, k) -> old.with(userId));
+        });
+    }
+
+    public void removeFriend(int userId, int friendId) {
+        write(() -> {
+            unlink(friendsByUser, userId, friendId);
+            unlink(followersByUser, friendId, userId);
+        });
+    }
+
+    public void removeUser(int userId) {
+        write(() -> {
+            IntSet friends = friendsByUser.remove(userId);
+            IntSet followers = followersByUser.remove(userId);
+
+            if (friends != null) {
+                friends.forEachInt(friendId -> unlink(followersByUser, friendId, userId));
+            }
+            if (followers != null) {
+                followers.forEachInt(followerId -> unlink(friendsByUser, followerId, userId));
+            }
+        });
+    }
+
+    @Override
+    protected void load() {
+        friendsByUser.clear();
+        followersByUser.clear();
+
+        Map<Integer, List<Integer>> friends = new HashMap<>();
+        Map<Integer, List<Integer>> followers = new HashMap<>();
+
+        jdbc.query(LOAD_QUERY, (RowCallbackHandler) rs -> {
+            int sender = rs.getInt("sender");
+            int recipient = rs.getInt("recipient");
+
+            friends.computeIfAbsent(sender, k -> new ArrayList<>()).add(recipient);
+            followers.computeIfAbsent(recipient, k -> new ArrayList<>()).add(sender);
+        });
+
+        friends.forEach((userId, ids) -> friendsByUser.put(userId, IntSet.copyOf(ids)));
+        followers.forEach((userId, ids) -> followersByUser.put(userId, IntSet.copyOf(ids)));
+    }
+
+    private static void unlink(Map<Integer, IntSet> adjacency, int key, int value) {
+        adjacency.computeIfPresent(key, (k, ids) -> {
+            IntSet rest = ids.without(value);
+
+            return rest.isEmpty() ? null : rest;
+        });
+    }
+}
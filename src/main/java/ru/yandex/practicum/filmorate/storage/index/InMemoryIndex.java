@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.TransactionHooks;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Основа для индексов, которые держат копию части БД в памяти.
+ * Индекс строится из БД при первом обращении, а дальше обновляется write-path'ами хранилищ.
+ * Все изменения индекса должны быть идемпотентными: если индекс впервые строится внутри
+ * той же транзакции, что и изменение, он уже увидит это изменение в БД.
+ * При откате транзакции индекс сбрасывается и будет заново построен при следующем чтении.
+ */
+@Slf4j
+public abstract class InMemoryIndex {
+    protected final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    protected InMemoryIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Очищает состояние и заново заполняет его из БД. Вызывается под блокировкой на запись.
+     */
+    protected abstract void load();
+
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.trace("Индекс {} сброшен", getClass().getSimpleName());
+    }
+
+    protected <R> R read(Supplier<R> action) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    protected void write(Runnable action) {
+        ensureLoaded();
+        TransactionHooks.onRollback(this::invalidate);
+
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                load();
+                loaded = true;
+
+                log.trace("Индекс {} построен", getClass().getSimpleName());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
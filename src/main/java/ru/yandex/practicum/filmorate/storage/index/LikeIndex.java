@@ -0,0 +1,161 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IntSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Матрица лайков: для каждого пользователя битовая карта его фильмов, для каждого фильма - карта лайкнувших.
+ * Общие фильмы и пересечения вкусов считаются пересечением карт, без обращения к liked_user.
+ */
+@Component
+public class LikeIndex extends InMemoryIndex {
+    private static final String LOAD_QUERY = "SELECT film_id, user_id FROM liked_user";
+    private static final CompressedBitmap EMPTY = new CompressedBitmap();
+
+    private final Map<Integer, CompressedBitmap> filmsByUser = new HashMap<>();
+    private final Map<Integer, CompressedBitmap> usersByFilm = new HashMap<>();
+
+    public LikeIndex(JdbcTemplate jdbc) {
+        super(jdbc);
+    }
+
+    public List<Integer> filmsOf(int userId) {
+        return read(() -> toList(filmsByUser.getOrDefault(userId, EMPTY)));
+    }
+
+    public Map<Integer, IntSet> likersOf(Collection<Integer> filmIds) {
+        return read(() -> {
+            Map<Integer, IntSet> result = new HashMap<>();
+
+            for (Integer filmId : filmIds) {
+                CompressedBitmap users = usersByFilm.get(filmId);
+
+                if (users != null) {
+                    result.put(filmId, IntSet.of(users.toArray()));
+                }
+            }
+
+            return result;
+        });
+    }
+
+    public int likes(int filmId) {
+        return read(() -> usersByFilm.getOrDefault(filmId, EMPTY).cardinality());
+    }
+
+    public List<Integer> common(int userId, int otherId) {
+        return read(() -> toList(filmsByUser.getOrDefault(userId, EMPTY)
+                .and(filmsByUser.getOrDefault(otherId, EMPTY))));
+    }
+
+    /**
+     * Фильмы пользователя с наибольшим числом общих лайков, которые сам userId еще не лайкнул.
+     * Сравниваем только с теми, кто лайкнул хотя бы один фильм userId; при равенстве берем меньший id.
+     */
+    public List<Integer> recommend(int userId) {
+        return read(() -> {
+            CompressedBitmap liked = filmsByUser.getOrDefault(userId, EMPTY);
+            CompressedBitmap candidates = new CompressedBitmap();
+
+            liked.forEach(filmId -> usersByFilm.get(filmId).forEach(candidates::add));
+            candidates.remove(userId);
+
+            int[] best = {-1, 0};
+
+            candidates.forEach(candidate -> {
+                int overlap = liked.andCardinality(filmsByUser.get(candidate));
+
+                if (overlap > best[1]) {
+                    best[0] = candidate;
+                    best[1] = overlap;
+                }
+            });
+
+            List<Integer> result = new ArrayList<>();
+
+            if (best[0] != -1) {
+                filmsByUser.get(best[0]).forEach(filmId -> {
+                    if (!liked.contains(filmId)) {
+                        result.add(filmId);
+                    }
+                });
+            }
+
+            return result;
+        });
+    }
+
+    public void addLike(int userId, int filmId) {
+        write(() -> link(userId, filmId));
+    }
+
+    public void removeLike(int userId, int filmId) {
+        write(() -> unlink(userId, filmId));
+    }
+
+    public void removeFilm(int filmId) {
+        write(() -> {
+            CompressedBitmap users = usersByFilm.get(filmId);
+
+            if (users != null) {
+                for (int userId : users.toArray()) {
+                    unlink(userId, filmId);
+                }
+            }
+        });
+    }
+
+    public void removeUser(int userId) {
+        write(() -> {
+            CompressedBitmap films = filmsByUser.get(userId);
+
+            if (films != null) {
+                for (int filmId : films.toArray()) {
+                    unlink(userId, filmId);
+                }
+            }
+        });
+    }
+
+    @Override
+    protected void load() {
+        filmsByUser.clear();
+        usersByFilm.clear();
+
+        jdbc.query(LOAD_QUERY, (RowCallbackHandler) rs -> link(rs.getInt("user_id"), rs.getInt("film_id")));
+    }
+
+    private void link(int userId, int filmId) {
+        filmsByUser.computeIfAbsent(userId, k -> new CompressedBitmap()).add(filmId);
+        usersByFilm.computeIfAbsent(filmId, k -> new CompressedBitmap()).add(userId);
+    }
+
+    private void unlink(int userId, int filmId) {
+        unlink(filmsByUser, userId, filmId);
+        unlink(usersByFilm, filmId, userId);
+    }
+
+    private static void unlink(Map<Integer, CompressedBitmap> bitmaps, int key, int value) {
+        CompressedBitmap bitmap = bitmaps.get(key);
+
+        if (bitmap != null && bitmap.remove(value) && bitmap.isEmpty()) {
+            bitmaps.remove(key);
+        }
+    }
+
+    private static List<Integer> toList(CompressedBitmap bitmap) {
+        List<Integer> result = new ArrayList<>(bitmap.cardinality());
+
+        bitmap.forEach(result::add);
+
+        return result;
+    }
+}
@@ -0,0 +1,216 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dto.FilmCursor;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Рейтинги фильмов по лайкам в разрезе (жанр, год выпуска), (жанр), (год) и по всем фильмам.
+ */
+@Component
+public class PopularityIndex extends InMemoryIndex {
+    private static final String LOAD_FILMS_QUERY = "SELECT id, release_date, likes_count FROM films";
+    private static final String LOAD_GENRES_QUERY = "SELECT film_id, genre_id FROM film_genre";
+    private static final Key ALL = new Key(null, null);
+    private static final Comparator<Ranked> ORDER = Comparator.comparingInt(Ranked::likes).reversed()
+            .thenComparingInt(Ranked::filmId);
+
+    private final Map<Integer, FilmInfo> films = new HashMap<>();
+    private final Map<Key, NavigableSet<Ranked>> rankings = new HashMap<>();
+    private final NavigableSet<Integer> years = new TreeSet<>();
+
+    public PopularityIndex(JdbcTemplate jdbc) {
+        super(jdbc);
+    }
+
+    public List<Integer> top(int count, Integer genreId, Integer year) {
+        return read(() -> rankings.getOrDefault(new Key(genreId, year), Collections.emptyNavigableSet())
+                .stream()
+                .limit(count)
+                .map(Ranked::filmId)
+                .toList());
+    }
+
+    /**
+     * Лучшие фильмы за годы выпуска с fromYear по toYear включительно. Границы могут быть null.
+     * Сливаем уже упорядоченные рейтинги отдельных лет, поэтому работа зависит от count и числа лет, а не от каталога.
+     */
+    public List<Integer> top(int count, Integer genreId, Integer fromYear, Integer toYear) {
+        if (fromYear == null && toYear == null) {
+            return top(count, genreId, null);
+        }
+        if (fromYear != null && fromYear.equals(toYear)) {
+            return top(count, genreId, fromYear);
+        }
+
+        return read(() -> {
+            NavigableSet<Integer> range = years.subSet(
+                    fromYear == null ? Integer.MIN_VALUE : fromYear, true,
+                    toYear == null ? Integer.MAX_VALUE : toYear, true);
+            PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing(Head::ranked, ORDER));
+
+            for (Integer year : range) {
+                NavigableSet<Ranked> ranking = rankings.get(new Key(genreId, year));
+
+                if (ranking != null) {
+                    Iterator<Ranked> iterator = ranking.iterator();
+
+                    heads.add(new Head(iterator.next(), iterator));
+                }
+            }
+
+            List<Integer> result = new ArrayList<>();
+
+            while (result.size() < count && !heads.isEmpty()) {
+                Head head = heads.poll();
+
+                result.add(head.ranked().filmId());
+
+                if (head.rest().hasNext()) {
+                    heads.add(new Head(head.rest().next(), head.rest()));
+                }
+            }
+
+            return result;
+        });
+    }
+
+    public List<Integer> rank(Collection<Integer> filmIds, FilmCursor after, int limit) {
+        Ranked from = new Ranked(after.id(), after.likes());
+
+        return read(() -> filmIds.stream()
+                .filter(films::containsKey)
+                .map(filmId -> new Ranked(filmId, films.get(filmId).likes()))
+                .filter(ranked -> ORDER.compare(ranked, from) > 0)
+                .sorted(ORDER)
+                .limit(limit)
+                .map(Ranked::filmId)
+                .toList());
+    }
+
+    public void putFilm(int filmId, LocalDate releaseDate, Collection<Integer> genreIds) {
+        write(() -> {
+            FilmInfo old = films.get(filmId);
+            int likes = old == null ? 0 : old.likes();
+
+            replace(filmId, new FilmInfo(likes, releaseDate == null ? null : releaseDate.getYear(),
+                    Set.copyOf(genreIds)));
+        });
+    }
+
+    public void setLikes(int filmId, int likes) {
+        write(() -> {
+            FilmInfo old = films.get(filmId);
+
+            if (old != null) {
+                replace(filmId, new FilmInfo(likes, old.year(), old.genres()));
+            }
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        write(() -> replace(filmId, null));
+    }
+
+    @Override
+    protected void load() {
+        films.clear();
+        rankings.clear();
+        years.clear();
+
+        Map<Integer, Set<Integer>> genres = new HashMap<>();
+
+        jdbc.query(LOAD_GENRES_QUERY, (RowCallbackHandler) rs -> genres
+                .computeIfAbsent(rs.getInt("film_id"), k -> new HashSet<>())
+                .add(rs.getInt("genre_id")));
+        jdbc.query(LOAD_FILMS_QUERY, (RowCallbackHandler) rs -> {
+            int filmId = rs.getInt("id");
+            LocalDate releaseDate = rs.getObject("release_date", LocalDate.class);
+
+            replace(filmId, new FilmInfo(rs.getInt("likes_count"),
+                    releaseDate == null ? null : releaseDate.getYear(),
+                    genres.getOrDefault(filmId, Set.of())));
+        });
+    }
+
+    private void replace(int filmId, FilmInfo info) {
+        FilmInfo old = info == null ? films.remove(filmId) : films.put(filmId, info);
+
+        if (old != null) {
+            Ranked ranked = new Ranked(filmId, old.likes());
+
+            for (Key key : old.keys()) {
+                NavigableSet<Ranked> ranking = rankings.get(key);
+
+                ranking.remove(ranked);
+
+                if (ranking.isEmpty()) {
+                    rankings.remove(key);
+
+                    if (key.genreId() == null && key.year() != null) {
+                        years.remove(key.year());
+                    }
+                }
+            }
+        }
+
+        if (info != null) {
+            Ranked ranked = new Ranked(filmId, info.likes());
+
+            if (info.year() != null) {
+                years.add(info.year());
+            }
+
+            for (Key key : info.keys()) {
+                rankings.computeIfAbsent(key, k -> new TreeSet<>(ORDER)).add(ranked);
+            }
+        }
+    }
+
+    private record Key(Integer genreId, Integer year) {
+    }
+
+    private record Ranked(int filmId, int likes) {
+    }
+
+    private record Head(Ranked ranked, Iterator<Ranked> rest) {
+    }
+
+    private record FilmInfo(int likes, Integer year, Set<Integer> genres) {
+        List<Key> keys() {
+            List<Key> keys = new ArrayList<>();
+
+            keys.add(ALL);
+
+            if (year != null) {
+                keys.add(new Key(null, year));
+            }
+
+            for (Integer genreId : genres) {
+                keys.add(new Key(genreId, null));
+
+                if (year != null) {
+                    keys.add(new Key(genreId, year));
+                }
+            }
+
+            return keys;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Сжатое префиксное дерево, в каждом узле которого лежат лучшие фильмы всего поддерева.
+ * Не потокобезопасно, синхронизацию обеспечивает владелец.
+ */
+class RadixTrie {
+    private final int topSize;
+    private final Function<String, Collection<Integer>> keyFilms;
+    private final Comparator<Integer> order;
+    private Node root = new Node("");
+
+    RadixTrie(int topSize, Function<String, Collection<Integer>> keyFilms, Comparator<Integer> order) {
+        this.topSize = topSize;
+        this.keyFilms = keyFilms;
+        this.order = order;
+    }
+
+    List<Integer> top(String prefix, int limit) {
+        Node node = root;
+        int i = 0;
+
+        while (i < prefix.length()) {
+            Node child = node.children.get(prefix.charAt(i));
+
+            if (child == null) {
+                return List.of();
+            }
+
+            int common = commonPrefix(child.label, prefix, i);
+
+            if (i + common == prefix.length()) {
+                return child.top.stream().limit(limit).toList();
+            }
+            if (common < child.label.length()) {
+                return List.of();
+            }
+
+            node = child;
+            i += common;
+        }
+
+        return node.top.stream().limit(limit).toList();
+    }
+
+    void rebuild(Collection<String> keys) {
+        root = new Node("");
+
+        for (String key : keys) {
+            insert(key);
+        }
+
+        recomputeAll(root);
+    }
+
+    /**
+     * Перестраивает путь до ключа после изменения его фильмов или их лайков.
+     */
+    void refresh(String key) {
+        List<Node> path = keyFilms.apply(key).isEmpty() ? remove(key) : insert(key);
+
+        for (int k = path.size() - 1; k >= 0; k--) {
+            recompute(path.get(k));
+        }
+    }
+
+    private List<Node> insert(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+
+        path.add(node);
+
+        while (i < key.length()) {
+            Node child = node.children.get(key.charAt(i));
+
+            if (child == null) {
+                child = new Node(key.substring(i));
+                node.children.put(key.charAt(i), child);
+                node = child;
+                path.add(node);
+                break;
+            }
+
+            int common = commonPrefix(child.label, key, i);
+
+            if (common < child.label.length()) {
+                Node middle = new Node(child.label.substring(0, common));
+
+                child.label = child.label.substring(common);
+                middle.children.put(child.label.charAt(0), child);
+                middle.top = child.top;
+                node.children.put(middle.label.charAt(0), middle);
+                child = middle;
+            }
+
+            node = child;
+            path.add(node);
+            i += common;
+        }
+
+        node.key = key;
+
+        return path;
+    }
+
+    private List<Node> remove(String key) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        int i = 0;
+
+        path.add(node);
+
+        while (i < key.length()) {
+            Node child = node.children.get(key.charAt(i));
+
+            if (child == null || !key.startsWith(child.label, i)) {
+                return List.of();
+            }
+
+            node = child;
+            path.add(node);
+            i += child.label.length();
+        }
+
+        if (node.key == null) {
+            return List.of();
+        }
+
+        node.key = null;
+
+        //Убираем опустевший лист и склеиваем узел с единственным потомком, чтобы дерево оставалось сжатым
+        for (int k = path.size() - 1; k > 0; k--) {
+            Node current = path.get(k);
+            Node parent = path.get(k - 1);
+
+            if (current.key != null) {
+                break;
+            }
+
+            if (current.children.isEmpty()) {
+                parent.children.remove(current.label.charAt(0));
+                path.remove(k);
+            } else if (current.children.size() == 1) {
+                Node child = current.children.values().iterator().next();
+
+                current.label = current.label + child.label;
+                current.key = child.key;
+                current.top = child.top;
+                current.children.clear();
+                current.children.putAll(child.children);
+                break;
+            } else {
+                break;
+            }
+        }
+
+        return path;
+    }
+
+    private void recomputeAll(Node node) {
+        for (Node child : node.children.values()) {
+            recomputeAll(child);
+        }
+
+        recompute(node);
+    }
+
+    private void recompute(Node node) {
+        Set<Integer> candidates = new LinkedHashSet<>();
+
+        if (node.key != null) {
+            candidates.addAll(keyFilms.apply(node.key));
+        }
+        for (Node child : node.children.values()) {
+            candidates.addAll(child.top);
+        }
+
+        node.top = candidates.stream()
+                .sorted(order)
+                .limit(topSize)
+                .toList();
+    }
+
+    private static int commonPrefix(String label, String value, int from) {
+        int max = Math.min(label.length(), value.length() - from);
+        int i = 0;
+
+        while (i < max && label.charAt(i) == value.charAt(from + i)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    private static class Node {
+        private String label;
+        private String key;
+        private List<Integer> top = List.of();
+        private final Map<Character, Node> children = new HashMap<>();
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Триграммный инвертированный индекс по названиям фильмов и именам режиссеров для поиска подстроки
+ * и префиксное дерево по ним же для подсказок.
+ */
+@Component
+public class SearchIndex extends InMemoryIndex {
+    private static final int GRAM = 3;
+    //Сколько лучших фильмов хранит каждый узел дерева подсказок, больше за один запрос не отдаем
+    public static final int SUGGEST_TOP = 20;
+    private static final String LOAD_FILMS_QUERY = "SELECT id, name, likes_count FROM films";
+    private static final String LOAD_DIRECTORS_QUERY = "SELECT id, name FROM directors";
+    private static final String LOAD_FILMS_DIRECTORS_QUERY = "SELECT film_id, director_id FROM films_directors";
+
+    private final Postings titles = new Postings();
+    private final Postings directors = new Postings();
+    private final Map<Integer, Set<Integer>> directorFilms = new HashMap<>();
+    private final Map<Integer, Set<Integer>> filmDirectors = new HashMap<>();
+    private final Map<Integer, String> filmNames = new HashMap<>();
+    private final Map<Integer, Integer> likes = new HashMap<>();
+    private final Map<String, Set<Integer>> titleOwners = new HashMap<>();
+    private final Map<String, Set<Integer>> directorsByName = new HashMap<>();
+    private final RadixTrie trie = new RadixTrie(SUGGEST_TOP, this::keyFilms,
+            Comparator.<Integer>comparingInt(id -> -likes.getOrDefault(id, 0)).thenComparing(id -> id));
+
+    public SearchIndex(JdbcTemplate jdbc) {
+        super(jdbc);
+    }
+
+    public Set<Integer> search(String query, boolean byTitle, boolean byDirector) {
+        String normalized = normalize(query);
+
+        return read(() -> {
+            Set<Integer> result = new HashSet<>();
+
+            if (byTitle) {
+                result.addAll(titles.find(normalized));
+            }
+            if (byDirector) {
+                for (Integer directorId : directors.find(normalized)) {
+                    result.addAll(directorFilms.getOrDefault(directorId, Set.of()));
+                }
+            }
+
+            return result;
+        });
+    }
+
+    /**
+     * Лучшие по лайкам фильмы, у которых название или имя режиссера начинается с префикса.
+     */
+    public List<FilmSuggestion> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+
+        return read(() -> trie.top(normalized, Math.min(limit, SUGGEST_TOP)).stream()
+                .map(id -> FilmSuggestion.builder().id(id).name(filmNames.get(id)).build())
+                .toList());
+    }
+
+    public void putFilm(int filmId, String name, Collection<Integer> directorIds) {
+        write(() -> {
+            Set<String> keys = keysOf(filmId);
+
+            setTitle(filmId, name);
+            unlinkAll(filmId);
+            directorIds.forEach(directorId -> link(filmId, directorId));
+
+            keys.addAll(keysOf(filmId));
+            keys.forEach(trie::refresh);
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        write(() -> {
+            Set<String> keys = keysOf(filmId);
+
+            setTitle(filmId, null);
+            unlinkAll(filmId);
+            likes.remove(filmId);
+
+            keys.forEach(trie::refresh);
+        });
+    }
+
+    public void setLikes(int filmId, int count) {
+        write(() -> {
+            likes.put(filmId, count);
+            keysOf(filmId).forEach(trie::refresh);
+        });
+    }
+
+    public void linkDirector(int filmId, int directorId) {
+        write(() -> {
+            link(filmId, directorId);
+            refreshDirector(directorId);
+        });
+    }
+
+    public void unlinkDirector(int filmId, int directorId) {
+        write(() -> {
+            filmDirectors.getOrDefault(filmId, new HashSet<>()).remove(directorId);
+            directorFilms.getOrDefault(directorId, new HashSet<>()).remove(filmId);
+            refreshDirector(directorId);
+        });
+    }
+
+    public void unlinkDirectors(int filmId) {
+        write(() -> {
+            Set<String> keys = keysOf(filmId);
+
+            unlinkAll(filmId);
+            keys.forEach(trie::refresh);
+        });
+    }
+
+    public void putDirector(int directorId, String name) {
+        write(() -> {
+            String old = directors.texts.get(directorId);
+
+            setDirectorName(directorId, name);
+
+            if (old != null) {
+                trie.refresh(old);
+            }
+            refreshDirector(directorId);
+        });
+    }
+
+    public void removeDirector(int directorId) {
+        write(() -> {
+            String old = directors.texts.get(directorId);
+
+            setDirectorName(directorId, null);
+
+            for (Integer filmId : directorFilms.getOrDefault(directorId, Set.of())) {
+                filmDirectors.get(filmId).remove(directorId);
+            }
+
+            directorFilms.remove(directorId);
+
+            if (old != null) {
+                trie.refresh(old);
+            }
+        });
+    }
+
+    @Override
+    protected void load() {
+        titles.clear();
+        directors.clear();
+        directorFilms.clear();
+        filmDirectors.clear();
+        filmNames.clear();
+        likes.clear();
+        titleOwners.clear();
+        directorsByName.clear();
+
+        jdbc.query(LOAD_FILMS_QUERY, (RowCallbackHandler) rs -> {
+            setTitle(rs.getInt("id"), rs.getString("name"));
+            likes.put(rs.getInt("id"), rs.getInt("likes_count"));
+        });
+        jdbc.query(LOAD_DIRECTORS_QUERY, (RowCallbackHandler) rs ->
+                setDirectorName(rs.getInt("id"), rs.getString("name")));
+        jdbc.query(LOAD_FILMS_DIRECTORS_QUERY, (RowCallbackHandler) rs ->
+                link(rs.getInt("film_id"), rs.getInt("director_id")));
+
+        Set<String> keys = new HashSet<>(titleOwners.keySet());
+
+        keys.addAll(directorsByName.keySet());
+        keys.removeIf(key -> keyFilms(key).isEmpty());
+        trie.rebuild(keys);
+    }
+
+    private void setTitle(int filmId, String name) {
+        String old = titles.texts.get(filmId);
+
+        if (old != null) {
+            removeOwner(titleOwners, old, filmId);
+        }
+
+        if (name == null) {
+            titles.remove(filmId);
+            filmNames.remove(filmId);
+            return;
+        }
+
+        String normalized = normalize(name);
+
+        titles.put(filmId, normalized);
+        filmNames.put(filmId, name);
+        titleOwners.computeIfAbsent(normalized, k -> new HashSet<>()).add(filmId);
+    }
+
+    private void setDirectorName(int directorId, String name) {
+        String old = directors.texts.get(directorId);
+
+        if (old != null) {
+            removeOwner(directorsByName, old, directorId);
+        }
+
+        if (name == null) {
+            directors.remove(directorId);
+            return;
+        }
+
+        String normalized = normalize(name);
+
+        directors.put(directorId, normalized);
+        directorsByName.computeIfAbsent(normalized, k -> new HashSet<>()).add(directorId);
+    }
+
+    private void refreshDirector(int directorId) {
+        String name = directors.texts.get(directorId);
+
+        if (name != null) {
+            trie.refresh(name);
+        }
+    }
+
+    /**
+     * Ключи дерева подсказок, под которыми виден фильм: его название и имена его режиссеров.
+     */
+    private Set<String> keysOf(int filmId) {
+        Set<String> keys = new LinkedHashSet<>();
+        String title = titles.texts.get(filmId);
+
+        if (title != null) {
+            keys.add(title);
+        }
+        for (Integer directorId : filmDirectors.getOrDefault(filmId, Set.of())) {
+            String name = directors.texts.get(directorId);
+
+            if (name != null) {
+                keys.add(name);
+            }
+        }
+
+        return keys;
+    }
+
+    private Collection<Integer> keyFilms(String key) {
+        Set<Integer> films = new HashSet<>(titleOwners.getOrDefault(key, Set.of()));
+
+        for (Integer directorId : directorsByName.getOrDefault(key, Set.of())) {
+            films.addAll(directorFilms.getOrDefault(directorId, Set.of()));
+        }
+
+        return films;
+    }
+
+    private static void removeOwner(Map<String, Set<Integer>> owners, String key, int id) {
+        Set<Integer> ids = owners.get(key);
+
+        if (ids != null) {
+            ids.remove(id);
+
+            if (ids.isEmpty()) {
+                owners.remove(key);
+            }
+        }
+    }
+
+    private void link(int filmId, int directorId) {
+        filmDirectors.computeIfAbsent(filmId, k -> new HashSet<>()).add(directorId);
+        directorFilms.computeIfAbsent(directorId, k -> new HashSet<>()).add(filmId);
+    }
+
+    private void unlinkAll(int filmId) {
+        Set<Integer> linked = filmDirectors.remove(filmId);
+
+        if (linked == null) {
+            return;
+        }
+
+        for (Integer directorId : linked) {
+            Set<Integer> films = directorFilms.get(directorId);
+
+            films.remove(filmId);
+
+            if (films.isEmpty()) {
+                directorFilms.remove(directorId);
+            }
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> grams(String value) {
+        Set<String> grams = new HashSet<>();
+
+        for (int i = 0; i + GRAM <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM));
+        }
+
+        return grams;
+    }
+
+    /**
+     * Тексты по id и списки id по каждой триграмме.
+     */
+    private static class Postings {
+        private final Map<Integer, String> texts = new HashMap<>();
+        private final Map<String, Set<Integer>> postings = new HashMap<>();
+
+        void put(int id, String text) {
+            remove(id);
+            texts.put(id, text);
+
+            for (String gram : grams(text)) {
+                postings.computeIfAbsent(gram, k -> new HashSet<>()).add(id);
+            }
+        }
+
+        void remove(int id) {
+            String old = texts.remove(id);
+
+            if (old == null) {
+                return;
+            }
+
+            for (String gram : grams(old)) {
+                Set<Integer> ids = postings.get(gram);
+
+                ids.remove(id);
+
+                if (ids.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+
+        void clear() {
+            texts.clear();
+            postings.clear();
+        }
+
+        List<Integer> find(String query) {
+            Set<String> queryGrams = grams(query);
+
+            //Для коротких запросов триграмм нет, проверяем все тексты
+            Collection<Integer> candidates = texts.keySet();
+
+            if (!queryGrams.isEmpty()) {
+                List<Set<Integer>> lists = new ArrayList<>();
+
+                for (String gram : queryGrams) {
+                    Set<Integer> ids = postings.get(gram);
+
+                    if (ids == null) {
+                        return List.of();
+                    }
+
+                    lists.add(ids);
+                }
+
+                lists.sort(Comparator.comparingInt(Set::size));
+
+                Set<Integer> intersection = new HashSet<>(lists.getFirst());
+
+                for (int i = 1; i < lists.size() && !intersection.isEmpty(); i++) {
+                    intersection.retainAll(lists.get(i));
+                }
+
+                candidates = intersection;
+            }
+
+            //Триграммы могут совпасть и в разных местах строки, поэтому кандидатов проверяем целиком
+            return candidates.stream()
+                    .filter(id -> texts.get(id).contains(query))
+                    .toList();
+        }
+    }
+}
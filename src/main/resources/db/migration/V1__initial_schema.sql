@@ -79,4 +79,4 @@ CREATE TABLE IF NOT EXISTS films_directors (
     film_id INTEGER REFERENCES films (id),
     director_id INTEGER REFERENCES directors (id),
     PRIMARY KEY (film_id, director_id)
-);
\ No newline at end of file
+);
@@ -0,0 +1,18 @@
+MERGE INTO genre (genre_id, name) KEY (genre_id)
+VALUES (1, 'Комедия'),
+    (2, 'Драма'),
+    (3, 'Мультфильм'),
+    (4, 'Триллер'),
+    (5, 'Документальный'),
+    (6, 'Боевик');
+
+MERGE INTO rating (rating_id, name) KEY (rating_id)
+VALUES (1, 'G'),
+    (2, 'PG'),
+    (3, 'PG-13'),
+    (4, 'R'),
+    (5, 'NC-17');
+
+ALTER TABLE genre ALTER COLUMN genre_id RESTART WITH 7;
+
+ALTER TABLE rating ALTER COLUMN rating_id RESTART WITH 6;
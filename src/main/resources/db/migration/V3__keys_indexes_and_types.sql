@@ -0,0 +1,26 @@
+-- rating_id ссылается на INTEGER, поэтому и сам должен быть INTEGER, иначе каждое соединение конвертирует значения
+ALTER TABLE films ALTER COLUMN rating_id SET DATA TYPE INTEGER;
+
+-- Старый код не мешал повторным лайкам: перед первичным ключом оставляем по одной строке на пару
+DELETE FROM liked_user WHERE film_id IS NULL OR user_id IS NULL;
+
+DELETE FROM liked_user
+WHERE _ROWID_ NOT IN (SELECT MIN(_ROWID_) FROM liked_user GROUP BY film_id, user_id);
+
+ALTER TABLE liked_user ALTER COLUMN film_id SET NOT NULL;
+
+ALTER TABLE liked_user ALTER COLUMN user_id SET NOT NULL;
+
+ALTER TABLE liked_user ADD CONSTRAINT liked_user_pk PRIMARY KEY (film_id, user_id);
+
+CREATE INDEX IF NOT EXISTS liked_user_user_idx ON liked_user (user_id, film_id);
+
+CREATE INDEX IF NOT EXISTS friends_recipient_idx ON friends (recipient, sender);
+
+CREATE INDEX IF NOT EXISTS events_user_idx ON events (user_id, timestamp);
+
+CREATE INDEX IF NOT EXISTS reviews_film_idx ON reviews (film_id);
+
+CREATE INDEX IF NOT EXISTS films_directors_director_idx ON films_directors (director_id, film_id);
+
+CREATE INDEX IF NOT EXISTS films_release_date_idx ON films (release_date, id);
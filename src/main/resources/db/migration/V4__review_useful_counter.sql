@@ -0,0 +1,8 @@
+-- Полезность отзыва ведется счетчиком, как films.likes_count, чтобы отзыв читался без агрегации по reviewLikes
+ALTER TABLE reviews ADD COLUMN IF NOT EXISTS useful INTEGER DEFAULT 0 NOT NULL;
+
+UPDATE reviews SET useful = (SELECT COALESCE(SUM(l.useful), 0) FROM reviewLikes AS l WHERE l.review_id = reviews.review_id);
+
+CREATE INDEX IF NOT EXISTS reviews_film_useful_idx ON reviews (film_id, useful DESC);
+
+CREATE INDEX IF NOT EXISTS reviews_useful_idx ON reviews (useful DESC);
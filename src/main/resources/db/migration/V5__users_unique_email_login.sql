@@ -0,0 +1,11 @@
+-- Уникальность email и логина держит БД, а не перебор всех пользователей в сервисе.
+-- Раньше дубликаты не проверялись при создании: у повторов, кроме самого раннего, к значению дописывается #id
+UPDATE users SET email = email || '#' || id
+WHERE EXISTS (SELECT 1 FROM users AS u WHERE u.email = users.email AND u.id < users.id);
+
+UPDATE users SET login = login || '#' || id
+WHERE EXISTS (SELECT 1 FROM users AS u WHERE u.login = users.login AND u.id < users.id);
+
+ALTER TABLE users ADD CONSTRAINT users_email_uq UNIQUE (email);
+
+ALTER TABLE users ADD CONSTRAINT users_login_uq UNIQUE (login);
@@ -0,0 +1,7 @@
+-- Счетчик лайков для сортировки по популярности. Сразу заполняется из liked_user,
+-- иначе до ночного пересчета все фильмы с лайками читались бы с нулем
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER DEFAULT 0 NOT NULL;
+
+UPDATE films f SET likes_count = (SELECT COUNT(*) FROM liked_user l WHERE l.film_id = f.id);
+
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, id);
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "filmorate.pagination.default-page-size=2",
+        "filmorate.pagination.max-page-size=3"})
+@AutoConfigureMockMvc
+@AutoConfigureTestDatabase
+@Transactional
+public class FilmControllerTests {
+    private static final String FILM = "{\"name\":\"name\",\"description\":\"desc\",\"releaseDate\":\"2000-01-01\"," +
+            "\"duration\":100,\"mpa\":{\"id\":1}}";
+
+    private static final String USER = "{\"email\":\"like@mail.e\",\"login\":\"liker\",\"name\":\"name\"," +
+            "\"birthday\":\"2000-01-01\"}";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Test
+    public void testFilmsWithoutLimitArePaged() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON).content(FILM))
+                    .andExpect(status().isOk());
+        }
+
+        mvc.perform(get("/films"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().exists("X-Next-Cursor"));
+
+        //Явный limit больше максимума обрезается до него
+        mvc.perform(get("/films").param("limit", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(header().exists("X-Next-Cursor"));
+    }
+
+    @Test
+    public void testLikeAnswersWithoutBody() throws Exception {
+        String film = mvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON).content(FILM))
+                .andReturn().getResponse().getContentAsString();
+        String user = mvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON).content(USER))
+                .andReturn().getResponse().getContentAsString();
+        int filmId = JsonPath.read(film, "$.id");
+        int userId = JsonPath.read(user, "$.id");
+
+        mvc.perform(put("/films/{film}/like/{user}", filmId, userId))
+                .andExpect(status().isNoContent())
+                .andExpect(header().string("Location", "http://localhost/films/" + filmId))
+                .andExpect(content().string(""));
+
+        mvc.perform(put("/films/{film}/like/{user}", filmId + 1000, userId))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testEmptyFieldsMeansAllFields() throws Exception {
+        String film = mvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON).content(FILM))
+                .andReturn().getResponse().getContentAsString();
+        int filmId = JsonPath.read(film, "$.id");
+
+        mvc.perform(get("/films/{id}", filmId).param("fields", ""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("name"))
+                .andExpect(jsonPath("$.mpa.id").value(1));
+
+        mvc.perform(get("/films/{id}", filmId).param("fields", "name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("name"))
+                .andExpect(jsonPath("$.mpa").doesNotExist());
+
+        mvc.perform(post("/films").param("fields", "unknown").contentType(MediaType.APPLICATION_JSON).content(FILM))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testPopularRejectsNonPositiveCount() throws Exception {
+        mvc.perform(get("/films/popular").param("count", "-1"))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/films/popular").param("count", "0"))
+                .andExpect(status().isBadRequest());
+
+        mvc.perform(get("/films/popular").param("count", "1"))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+public class IntSetTests {
+    @Test
+    public void testBehavesAsSetAndWritesPlainJsonArray() throws Exception {
+        IntSet set = IntSet.of(5, 1, 3, 1);
+
+        Assertions.assertEquals(Set.of(1, 3, 5), set);
+        Assertions.assertEquals(Set.of(1, 3, 5), IntSet.copyOf(List.of(3, 5, 1)));
+        Assertions.assertEquals(Set.of(1, 3, 5).hashCode(), set.hashCode());
+        Assertions.assertArrayEquals(new int[]{1, 2, 3, 5}, set.with(2).toIntArray());
+        Assertions.assertSame(set, set.with(3));
+        Assertions.assertEquals(Set.of(1, 5), set.without(3));
+        Assertions.assertEquals(Set.of(3, 5), set.intersect(IntSet.of(2, 3, 4, 5, 6)));
+        Assertions.assertSame(IntSet.EMPTY, set.intersect(IntSet.of(2, 4)));
+        Assertions.assertEquals(Set.of(3, 5), set.intersect(IntSet.of(1, 3, 5), 1, 2));
+        Assertions.assertEquals(Set.of(3), set.intersect(IntSet.of(1, 3, 5), 1, 1));
+        Assertions.assertEquals(Set.of(3, 5), set.page(2, 10));
+        Assertions.assertEquals(Set.of(1), set.page(0, 1));
+        Assertions.assertSame(IntSet.EMPTY, set.page(5, 10));
+        Assertions.assertTrue(set.contains(3));
+        Assertions.assertFalse(set.contains(4));
+        Assertions.assertFalse(set.contains((Object) "3"));
+
+        ObjectMapper json = new ObjectMapper();
+
+        Assertions.assertEquals("[1,3,5]", json.writeValueAsString(set));
+        Assertions.assertEquals(set, json.readValue("[5,3,1,3]", IntSet.class));
+        Assertions.assertEquals(IntSet.EMPTY, json.readValue("[]", IntSet.class));
+    }
+}
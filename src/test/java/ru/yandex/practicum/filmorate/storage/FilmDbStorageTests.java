@@ -4,16 +4,25 @@ import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
+import ru.yandex.practicum.filmorate.dto.FilmCursor;
 import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
 import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmPart;
+import ru.yandex.practicum.filmorate.model.FilmSuggestion;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.DirectorDbStorage;
 import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
 import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
 
@@ -22,11 +31,13 @@ import java.util.*;
 
 @JdbcTest
 @ComponentScan("ru.yandex.practicum.filmorate")
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class FilmDbStorageTests {
     private final FilmDbStorage storage;
     private final UserDbStorage userStorage;
+    private final DirectorDbStorage directorStorage;
 
     @Test
     public void testGetAllFilms() throws NotFoundException, CorruptedDataException, DuplicatedDataException {
@@ -35,7 +46,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -44,7 +55,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -55,6 +66,254 @@ public class FilmDbStorageTests {
         Assertions.assertFalse(films.isEmpty());
     }
 
+    @Test
+    public void testGetAllFilmsFillsNestedData() throws NotFoundException, CorruptedDataException,
+            DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of(Genre.builder().id(1).build(), Genre.builder().id(3).build()))
+                .build();
+        Film film1 = Film.builder()
+                .name("name1")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of(Genre.builder().id(2).build()))
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        userStorage.addUser(user);
+        storage.addFilm(film);
+        storage.addFilm(film1);
+        storage.addLike(user.getId(), film1.getId());
+
+        Map<Integer, Film> films = new HashMap<>();
+        storage.getFilms().forEach(f -> films.put(f.getId(), f));
+
+        Assertions.assertEquals(2, films.get(film.getId()).getGenres().size());
+        Assertions.assertTrue(films.get(film.getId()).getLikedUsers().isEmpty());
+        Assertions.assertEquals(1, films.get(film1.getId()).getGenres().size());
+        Assertions.assertEquals(Set.of(user.getId()), films.get(film1.getId()).getLikedUsers());
+    }
+
+    @Test
+    public void testGetFilmsPage() throws CorruptedDataException, DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        Film film1 = Film.builder()
+                .name("name1")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        storage.addFilm(film);
+        storage.addFilm(film1);
+
+        List<Film> first = storage.getFilms(FilmCursor.FIRST, 1, FilmPart.ALL);
+        List<Film> second = storage.getFilms(FilmCursor.after(first.getFirst()), 1, FilmPart.ALL);
+
+        Assertions.assertEquals(List.of(film), first);
+        Assertions.assertEquals(List.of(film1), second);
+        Assertions.assertTrue(storage.getFilms(FilmCursor.after(second.getFirst()), 1, FilmPart.ALL).isEmpty());
+    }
+
+    @Test
+    public void testGetFilmsPageLoadsOnlyRequestedParts() throws CorruptedDataException, DuplicatedDataException,
+            NotFoundException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of(Genre.builder().id(1).build()))
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        storage.addFilm(film);
+        userStorage.addUser(user);
+        storage.addLike(user.getId(), film.getId());
+
+        Film page = storage.getFilms(new FilmCursor(0, null, film.getId() - 1), 1,
+                Set.of(FilmPart.GENRES)).getFirst();
+
+        Assertions.assertEquals(1, page.getLikesCount());
+        Assertions.assertNull(page.getLikedUsers());
+        Assertions.assertNull(page.getDirectors());
+        Assertions.assertEquals(1, page.getGenres().size());
+    }
+
+    @Test
+    public void testExportFilmsInChunks() throws CorruptedDataException, DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of(Genre.builder().id(1).build()))
+                .build();
+        Film film1 = Film.builder()
+                .name("name1")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        storage.addFilm(film);
+        storage.addFilm(film1);
+
+        List<List<Film>> chunks = new ArrayList<>();
+        storage.exportFilms(1, FilmPart.ALL, chunks::add);
+
+        Assertions.assertEquals(List.of(List.of(film), List.of(film1)), chunks);
+        Assertions.assertEquals(1, chunks.getFirst().getFirst().getGenres().size());
+    }
+
+    @Test
+    public void testSearchByTitle() throws CorruptedDataException, DuplicatedDataException {
+        Film film = Film.builder()
+                .name("Крепкий орешек")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        storage.addFilm(film);
+
+        Assertions.assertEquals(List.of(film), storage.search("ОРЕШ", true, false, FilmCursor.FIRST, 10, FilmPart.ALL));
+        Assertions.assertTrue(storage.search("ОРЕШ", false, true, FilmCursor.FIRST, 10, FilmPart.ALL).isEmpty());
+    }
+
+    @Test
+    public void testSearchByDirector() throws CorruptedDataException, DuplicatedDataException {
+        Director director = directorStorage.create(Director.builder().name("Джон Мактирнан").build());
+        Film film = Film.builder()
+                .name("Крепкий орешек")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .directors(new LinkedHashSet<>(List.of(director)))
+                .build();
+        storage.addFilm(film);
+
+        Assertions.assertEquals(List.of(film), storage.search("мактир", false, true, FilmCursor.FIRST, 10, FilmPart.ALL));
+        Assertions.assertEquals(List.of(film), storage.search("ор", true, true, FilmCursor.FIRST, 10, FilmPart.ALL));
+
+        directorStorage.delete(director.getId());
+
+        Assertions.assertTrue(storage.search("мактир", false, true, FilmCursor.FIRST, 10, FilmPart.ALL).isEmpty());
+    }
+
+    @Test
+    public void testSuggestByPrefix() throws CorruptedDataException, NotFoundException, DuplicatedDataException {
+        Director director = directorStorage.create(Director.builder().name("Кристофер Нолан").build());
+        Film film = Film.builder()
+                .name("Крепкий орешек")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        Film film1 = Film.builder()
+                .name("Довод")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .directors(new LinkedHashSet<>(List.of(director)))
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        userStorage.addUser(user);
+        storage.addFilm(film);
+        storage.addFilm(film1);
+        storage.addLike(user.getId(), film1.getId());
+
+        Assertions.assertEquals(List.of(film1.getId(), film.getId()),
+                storage.suggest("Кр", 10).stream().map(FilmSuggestion::getId).toList());
+        Assertions.assertEquals("Довод", storage.suggest("крис", 10).getFirst().getName());
+        Assertions.assertEquals(1, storage.suggest("кр", 1).size());
+        Assertions.assertTrue(storage.suggest("крепкий орешек 2", 10).isEmpty());
+
+        storage.deleteFilm(film.getId());
+
+        Assertions.assertTrue(storage.suggest("креп", 10).isEmpty());
+    }
+
+    @Test
+    public void testCommonFilmsAndRecommendations() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        List<Film> films = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            Film film = Film.builder()
+                    .name("name" + i)
+                    .description("desc")
+                    .duration(123)
+                    .releaseDate(LocalDate.now())
+                    .rating(Rating.builder().id(3).name("PG-13").build())
+                    .build();
+            User user = User.builder()
+                    .email("e" + i + "@mail.e")
+                    .login("login" + i)
+                    .name("name")
+                    .birthday(LocalDate.now())
+                    .friends(IntSet.EMPTY)
+                    .build();
+            storage.addFilm(film);
+            userStorage.addUser(user);
+            films.add(film);
+            users.add(user);
+        }
+
+        storage.addLike(users.get(0).getId(), films.get(0).getId());
+        storage.addLike(users.get(1).getId(), films.get(0).getId());
+        storage.addLike(users.get(1).getId(), films.get(1).getId());
+        storage.addLike(users.get(2).getId(), films.get(2).getId());
+
+        Assertions.assertEquals(List.of(films.get(0).getId()), storage.getCommonFilms(users.get(0).getId(),
+                users.get(1).getId(), FilmPart.ALL).stream().map(Film::getId).toList());
+        Assertions.assertEquals(List.of(films.get(1).getId()),
+                storage.getRecommendations(users.get(0).getId(), FilmPart.ALL).stream().map(Film::getId).toList());
+        Assertions.assertTrue(storage.getRecommendations(users.get(2).getId(), FilmPart.ALL).isEmpty());
+
+        storage.deleteLike(users.get(1).getId(), films.get(0).getId());
+
+        Assertions.assertTrue(storage.getCommonFilms(users.get(0).getId(), users.get(1).getId(), FilmPart.ALL).isEmpty());
+    }
+
     @Test
     public void testGetFilm() throws NotFoundException, CorruptedDataException, DuplicatedDataException {
         Film film = Film.builder()
@@ -62,7 +321,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -73,6 +332,96 @@ public class FilmDbStorageTests {
         Assertions.assertEquals(film2.getId(), film.getId());
     }
 
+    @Test
+    public void testGetFilmIsCachedAndInvalidated() throws NotFoundException, CorruptedDataException,
+            DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of())
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        storage.addFilm(film);
+        userStorage.addUser(user);
+
+        long hits = storage.getCacheStats().getHits();
+
+        storage.getFilm(film.getId());
+        storage.getFilm(film.getId()).setName("changed by caller");
+
+        Assertions.assertEquals(hits + 1, storage.getCacheStats().getHits());
+        Assertions.assertEquals("name", storage.getFilm(film.getId()).getName());
+
+        film.setName("new name");
+        storage.updateFilm(film);
+        storage.addLike(user.getId(), film.getId());
+        Film cached = storage.getFilm(film.getId());
+
+        Assertions.assertEquals("new name", cached.getName());
+        Assertions.assertEquals(Set.of(user.getId()), cached.getLikedUsers());
+    }
+
+    @Test
+    public void testWritesAnswerWithoutRereading() throws NotFoundException, CorruptedDataException,
+            DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).build())
+                .genres(Set.of(Genre.builder().id(2).build()))
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        storage.addFilm(film);
+        userStorage.addUser(user);
+
+        //Названия рейтинга и жанров подставлены при создании
+        Assertions.assertEquals("PG-13", film.getRating().getName());
+        Assertions.assertEquals("Драма", film.getGenres().iterator().next().getName());
+        Assertions.assertEquals(0, film.getLikesCount());
+
+        storage.getFilm(film.getId());
+        long misses = storage.getCacheStats().getMisses();
+
+        storage.addLike(user.getId(), film.getId());
+        Film liked = storage.getFilm(film.getId());
+
+        Assertions.assertEquals(misses, storage.getCacheStats().getMisses());
+        Assertions.assertEquals(Set.of(user.getId()), liked.getLikedUsers());
+        Assertions.assertEquals(1, liked.getLikesCount());
+
+        int reviewId = storage.addReview(Review.builder()
+                .content("content")
+                .isPositive(true)
+                .filmId(film.getId())
+                .userId(user.getId())
+                .build());
+
+        Assertions.assertEquals(1, storage.addReviewLike(reviewId, user.getId(), 1));
+        Assertions.assertEquals(-1, storage.addReviewLike(reviewId, user.getId(), -1));
+        Assertions.assertEquals(-1, storage.getReview(reviewId).getUseful());
+        Assertions.assertEquals(Optional.of(0), storage.deleteReviewLike(reviewId, user.getId()));
+        Assertions.assertTrue(storage.deleteReviewLike(reviewId, user.getId()).isEmpty());
+    }
+
     @Test
     public void testGetMostPopular() throws NotFoundException, CorruptedDataException, DuplicatedDataException {
         Film film = Film.builder()
@@ -80,7 +429,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -98,7 +447,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(Set.of(Genre.builder().id(6).build()))
                 .build();
@@ -116,7 +465,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.of(2010, 3, 3))
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -127,6 +476,39 @@ public class FilmDbStorageTests {
         Assertions.assertEquals(films, List.of(storage.getFilm(film.getId())));
     }
 
+    @Test
+    public void testGetMostPopularWithYearRange() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        List<Film> films = new ArrayList<>();
+
+        for (int year : List.of(2001, 2005, 2010)) {
+            Film film = Film.builder()
+                    .name("name" + year)
+                    .description("desc")
+                    .duration(123)
+                    .releaseDate(LocalDate.of(year, 3, 3))
+                    .rating(Rating.builder().id(3).name("PG-13").build())
+                    .build();
+            storage.addFilm(film);
+            films.add(film);
+        }
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        userStorage.addUser(user);
+        storage.addLike(user.getId(), films.get(1).getId());
+
+        Assertions.assertEquals(List.of(films.get(1).getId(), films.get(0).getId()),
+                storage.getMostPopular(10, null, 2000, 2006, FilmPart.ALL).stream().map(Film::getId).toList());
+        Assertions.assertEquals(List.of(films.get(2).getId()),
+                storage.getMostPopular(10, null, 2006, null, FilmPart.ALL).stream().map(Film::getId).toList());
+        Assertions.assertEquals(1, storage.getMostPopular(1, null, null, 2010, FilmPart.ALL).size());
+    }
+
     @Test
     public void testGetMostPopularWithGenreAndYear() throws NotFoundException, CorruptedDataException, DuplicatedDataException {
         Film film = Film.builder()
@@ -134,7 +516,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.of(1997, 3, 3))
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(Set.of(Genre.builder().id(5).build()))
                 .build();
@@ -152,7 +534,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(Set.of(Genre.builder().id(1).build(), Genre.builder().id(3).build()))
                 .build();
@@ -169,7 +551,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -178,7 +560,7 @@ public class FilmDbStorageTests {
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
 
         userStorage.addUser(user);
@@ -189,6 +571,161 @@ public class FilmDbStorageTests {
         Assertions.assertTrue(film.getLikedUsers().contains(user.getId()));
     }
 
+    @Test
+    public void testDirectorFilmsPagedAndRefreshed() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        Director director = directorStorage.create(Director.builder().name("director").build());
+        User user = User.builder()
+                .email("director@mail.e")
+                .login("director")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        List<Film> films = new ArrayList<>();
+
+        userStorage.addUser(user);
+        for (int year : List.of(2010, 1990, 2000)) {
+            Film film = Film.builder()
+                    .name("name" + year)
+                    .description("desc")
+                    .duration(123)
+                    .releaseDate(LocalDate.of(year, 1, 1))
+                    .rating(Rating.builder().id(3).build())
+                    .directors(new LinkedHashSet<>(List.of(director)))
+                    .build();
+            storage.addFilm(film);
+            films.add(film);
+        }
+
+        List<Film> first = storage.findDirectorFilmsOrderYear(director.getId(), FilmCursor.FIRST, 2, FilmPart.ALL);
+
+        Assertions.assertEquals(List.of(films.get(1).getId(), films.get(2).getId()),
+                first.stream().map(Film::getId).toList());
+        Assertions.assertEquals("director", first.getFirst().getDirectors().iterator().next().getName());
+        Assertions.assertEquals(List.of(films.get(0).getId()), storage.findDirectorFilmsOrderYear(director.getId(),
+                FilmCursor.after(first.getLast()), 2, FilmPart.ALL).stream().map(Film::getId).toList());
+        Assertions.assertNull(storage.findDirectorFilms(director.getId(), FilmCursor.FIRST, 1,
+                Set.of(FilmPart.GENRES)).getFirst().getDirectors());
+
+        //Лайк и новый фильм должны сбросить закэшированную фильмографию
+        storage.addLike(user.getId(), films.get(2).getId());
+        Film added = Film.builder()
+                .name("added")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.of(1980, 1, 1))
+                .rating(Rating.builder().id(3).build())
+                .directors(new LinkedHashSet<>(List.of(director)))
+                .build();
+        storage.addFilm(added);
+
+        Assertions.assertEquals(films.get(2).getId(), storage.findDirectorFilmsOrderLikes(director.getId(),
+                FilmCursor.FIRST, 1, FilmPart.ALL).getFirst().getId());
+        Assertions.assertEquals(added.getId(), storage.findDirectorFilmsOrderYear(director.getId(),
+                FilmCursor.FIRST, 1, FilmPart.ALL).getFirst().getId());
+    }
+
+    @Test
+    public void testFeedOnlyForAppliedLikes() throws CorruptedDataException, DuplicatedDataException,
+            NotFoundException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).build())
+                .build();
+        User user = User.builder()
+                .email("feed@mail.e")
+                .login("feed")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        userStorage.addUser(user);
+        storage.addFilm(film);
+        storage.addLike(user.getId(), film.getId());
+        storage.addLike(user.getId(), film.getId());
+        storage.addLike(user.getId(), film.getId() + 1000);
+        storage.deleteLike(user.getId(), film.getId() + 1000);
+
+        Assertions.assertEquals(1, userStorage.getFeeds(user.getId()).size());
+    }
+
+    @Test
+    public void testDeleteUserRemovesLikes() throws CorruptedDataException, DuplicatedDataException,
+            NotFoundException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).build())
+                .build();
+        User user = User.builder()
+                .email("liker@mail.e")
+                .login("liker")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        userStorage.addUser(user);
+        storage.addFilm(film);
+        storage.addLike(user.getId(), film.getId());
+
+        Assertions.assertEquals(1, storage.getFilm(film.getId()).getLikesCount());
+
+        userStorage.deleteUser(user.getId());
+        Film unliked = storage.getFilm(film.getId());
+
+        Assertions.assertFalse(userStorage.contains(user.getId()));
+        Assertions.assertTrue(unliked.getLikedUsers().isEmpty());
+        Assertions.assertEquals(0, unliked.getLikesCount());
+    }
+
+    @Test
+    public void testMostPopularOrderedByLikes() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        Film film1 = Film.builder()
+                .name("name1")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        userStorage.addUser(user);
+        storage.addFilm(film);
+        storage.addFilm(film1);
+        storage.addLike(user.getId(), film1.getId());
+        storage.addLike(user.getId(), film1.getId());
+
+        Assertions.assertEquals(film1.getId(), storage.getMostPopular(1, null, null).getFirst().getId());
+        Assertions.assertEquals(1, storage.getFilm(film1.getId()).getLikesNumber());
+
+        storage.deleteLike(user.getId(), film1.getId());
+        storage.recountLikes();
+
+        Assertions.assertEquals(0, storage.getFilm(film1.getId()).getLikesNumber());
+    }
+
     @Test
     public void testUpdateFilm() throws CorruptedDataException, NotFoundException, DuplicatedDataException {
         Film film = Film.builder()
@@ -196,7 +733,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -209,7 +746,7 @@ public class FilmDbStorageTests {
                 .description("descNew")
                 .duration(1233)
                 .releaseDate(LocalDate.now().minusDays(12))
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -223,6 +760,69 @@ public class FilmDbStorageTests {
         Assertions.assertEquals(film2.getReleaseDate(), newFilm.getReleaseDate());
     }
 
+    @Test
+    public void testUpdateFilmGenresAndDirectors() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        Director first = directorStorage.create(Director.builder().name("first").build());
+        Director second = directorStorage.create(Director.builder().name("second").build());
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(new HashSet<>(List.of(Genre.builder().id(1).build(), Genre.builder().id(2).build())))
+                .directors(new LinkedHashSet<>(List.of(first)))
+                .build();
+        storage.addFilm(film);
+
+        film.setGenres(new HashSet<>(List.of(Genre.builder().id(2).build(), Genre.builder().id(3).build())));
+        film.setDirectors(new LinkedHashSet<>(List.of(second)));
+        storage.updateFilm(film);
+
+        Film newFilm = storage.getFilm(film.getId());
+
+        Assertions.assertEquals(List.of(2, 3), newFilm.getGenres().stream().map(Genre::getId).sorted().toList());
+        Assertions.assertEquals(List.of(second.getId()),
+                newFilm.getDirectors().stream().map(Director::getId).toList());
+
+        film.setGenres(new HashSet<>(List.of(Genre.builder().id(100).build())));
+
+        Assertions.assertThrows(CorruptedDataException.class, () -> storage.updateFilm(film));
+    }
+
+    @Test
+    public void testAddFilmsInBulk() throws NotFoundException {
+        Director director = directorStorage.create(Director.builder().name("director").build());
+        List<Film> films = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            films.add(Film.builder()
+                    .name("bulk" + i)
+                    .description("desc")
+                    .duration(100 + i)
+                    .releaseDate(LocalDate.now())
+                    .rating(Rating.builder().id(3).name("PG-13").build())
+                    .genres(new HashSet<>(List.of(Genre.builder().id(i == 1 ? 100 : 1).build())))
+                    .directors(new LinkedHashSet<>(List.of(director)))
+                    .build());
+        }
+
+        List<String> errors = storage.addFilms(films);
+
+        Assertions.assertNull(errors.get(0));
+        Assertions.assertNotNull(errors.get(1));
+        Assertions.assertNull(errors.get(2));
+        Assertions.assertNull(films.get(1).getId());
+
+        Film stored = storage.getFilm(films.get(2).getId());
+
+        Assertions.assertEquals("bulk2", stored.getName());
+        Assertions.assertEquals(List.of(1), stored.getGenres().stream().map(Genre::getId).toList());
+        Assertions.assertEquals(List.of(director.getId()),
+                stored.getDirectors().stream().map(Director::getId).toList());
+    }
+
     @Test
     public void testDeleteFilm() throws CorruptedDataException, DuplicatedDataException {
         Film film = Film.builder()
@@ -230,7 +830,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparing(Genre::getId)))
                 .build();
@@ -251,7 +851,7 @@ public class FilmDbStorageTests {
                 .description("desc")
                 .duration(123)
                 .releaseDate(LocalDate.now())
-                .likedUsers(new HashSet<>())
+                .likedUsers(IntSet.EMPTY)
                 .rating(Rating.builder().id(3).name("PG-13").build())
                 .genres(new TreeSet<>(Comparator.comparingInt(Genre::getId)))
                 .build();
@@ -260,7 +860,7 @@ public class FilmDbStorageTests {
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
 
         userStorage.addUser(user);
@@ -300,7 +900,7 @@ public class FilmDbStorageTests {
     }
 
     @Test
-    public void shouldWeGetUsersLikedFilmsWithoutLikes() throws NotFoundException {
+    public void shouldWeGetUsersLikedFilmsWithoutLikes() throws NotFoundException, DuplicatedDataException {
         User newUser = User.builder()
                 .login("login")
                 .name("name")
@@ -4,6 +4,8 @@ import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
@@ -15,6 +17,7 @@ import java.util.Collection;
 
 @JdbcTest
 @ComponentScan("ru.yandex.practicum.filmorate")
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class GenreDbStorageTests {
@@ -34,4 +37,21 @@ public class GenreDbStorageTests {
         Assertions.assertNotNull(genre);
         Assertions.assertEquals(genre.getId(), 1);
     }
+
+    @Test
+    public void testContains() {
+        Assertions.assertTrue(storage.contains(1));
+        Assertions.assertFalse(storage.contains(999));
+        Assertions.assertThrows(NotFoundException.class, () -> storage.getGenre(999));
+    }
+
+    @Test
+    public void testReturnedGenreIsCopy() throws NotFoundException {
+        Genre genre = storage.getGenre(1);
+        String name = genre.getName();
+
+        genre.setName("changed");
+
+        Assertions.assertEquals(name, storage.getGenre(1).getName());
+    }
 }
@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.FeedEventType;
+import ru.yandex.practicum.filmorate.dto.FeedOperationType;
+import ru.yandex.practicum.filmorate.exception.CorruptedDataException;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.IntSet;
+import ru.yandex.practicum.filmorate.model.Rating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.dao.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.storage.cache.DirectorFilmsCache;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.index.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SearchIndex;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+@JdbcTest
+@ComponentScan("ru.yandex.practicum.filmorate")
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@AutoConfigureTestDatabase
+//Таймер отодвинут, чтобы буфер писал только по явному flush() внутри транзакции теста
+@TestPropertySource(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval-ms=3600000"})
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class LikeWriteBufferTests {
+    private final FilmDbStorage storage;
+    private final UserDbStorage userStorage;
+    private final FeedDbStorage feedStorage;
+    private final LikeWriteBuffer buffer;
+    private final JdbcTemplate jdbc;
+    private final PlatformTransactionManager transactionManager;
+    private final PopularityIndex popularityIndex;
+    private final SearchIndex searchIndex;
+    private final LikeIndex likeIndex;
+    private final FilmCache filmCache;
+    private final DirectorFilmsCache directorFilmsCache;
+
+    @Test
+    public void testLikesAreCoalescedAndFlushed() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        Film film = Film.builder()
+                .name("name")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of())
+                .build();
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        User other = User.builder()
+                .email("o@mail.e")
+                .login("other")
+                .name("other")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        storage.addFilm(film);
+        userStorage.addUser(user);
+        userStorage.addUser(other);
+
+        storage.addLike(user.getId(), film.getId());
+        storage.addLike(other.getId(), film.getId());
+        storage.deleteLike(other.getId(), film.getId());
+
+        Assertions.assertTrue(storage.getLikes(film.getId()).isEmpty());
+
+        buffer.flush();
+
+        Assertions.assertEquals(Set.of(user.getId()), storage.getLikes(film.getId()));
+        Assertions.assertEquals(1, jdbc.queryForObject("SELECT likes_count FROM films WHERE id = ?",
+                Integer.class, film.getId()));
+        Assertions.assertEquals(1, feedStorage.getFeedByUserId(user.getId()).size());
+        //Лайк и отмена схлопнулись в удаление, которое не изменило ни одной строки, поэтому событий нет
+        Assertions.assertTrue(feedStorage.getFeedByUserId(other.getId()).isEmpty());
+    }
+
+    //Без транзакции теста: каждая запись по одному лайку должна по-настоящему закоммититься или откатиться
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void testPoisonLikeIsDroppedAfterMaxRetries() throws CorruptedDataException, NotFoundException,
+            DuplicatedDataException {
+        Film film = Film.builder()
+                .name("good")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of())
+                .build();
+        Film poison = Film.builder()
+                .name("poison")
+                .description("desc")
+                .duration(123)
+                .releaseDate(LocalDate.now())
+                .rating(Rating.builder().id(3).name("PG-13").build())
+                .genres(Set.of())
+                .build();
+        User user = User.builder()
+                .email("p@mail.e")
+                .login("poison")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+
+        storage.addFilm(film);
+        storage.addFilm(poison);
+        userStorage.addUser(user);
+
+        //Запись ленты падает на каждой пачке, где есть лайк второго фильма
+        FeedDbStorage feed = Mockito.mock(FeedDbStorage.class);
+        Mockito.doThrow(new IllegalStateException("poison")).when(feed).addFeeds(ArgumentMatchers.argThat(
+                events -> events.stream().anyMatch(event -> event.getEntityId() == poison.getId())));
+        LikeWriteBuffer failing = new LikeWriteBuffer(jdbc, transactionManager, feed, popularityIndex, searchIndex,
+                likeIndex, filmCache, directorFilmsCache, true, 1000, 2, "buffered");
+
+        try {
+            failing.like(user.getId(), film.getId(), event(user.getId(), film.getId()));
+            failing.like(user.getId(), poison.getId(), event(user.getId(), poison.getId()));
+
+            failing.flush();
+            Assertions.assertTrue(storage.getLikes(film.getId()).isEmpty());
+
+            failing.flush();
+            Assertions.assertEquals(Set.of(user.getId()), storage.getLikes(film.getId()));
+            Assertions.assertTrue(storage.getLikes(poison.getId()).isEmpty());
+
+            //Битый лайк отброшен и больше не пишется
+            failing.flush();
+            Mockito.verify(feed, Mockito.times(4)).addFeeds(ArgumentMatchers.anyList());
+        } finally {
+            storage.deleteFilm(film.getId());
+            storage.deleteFilm(poison.getId());
+            userStorage.deleteUser(user.getId());
+        }
+    }
+
+    private static Feed event(int userId, int filmId) {
+        return Feed.builder()
+                .userId(userId)
+                .timestamp(System.currentTimeMillis())
+                .eventType(FeedEventType.LIKE.name())
+                .operation(FeedOperationType.ADD.name())
+                .entityId(filmId)
+                .build();
+    }
+}
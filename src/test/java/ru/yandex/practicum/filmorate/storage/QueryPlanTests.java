@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.dao.FeedDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.LikeWriteBuffer;
+import ru.yandex.practicum.filmorate.storage.dao.ReviewDbStorage;
+import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Проверяет через EXPLAIN, что запросы хранилищ не читают таблицы целиком.
+ */
+@JdbcTest
+@ComponentScan("ru.yandex.practicum.filmorate")
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class QueryPlanTests {
+    //Запросы, которым по смыслу нужна вся таблица
+    private static final Set<String> FULL_SCANS = Set.of(
+            "FilmDbStorage.FIND_ALL_QUERY",
+            "FilmDbStorage.RECOUNT_LIKES_QUERY",
+            "UserDbStorage.FIND_ALL_QUERY",
+            "ReviewDbStorage.FIND_ALL_QUERY",
+            "ReviewDbStorage.FIND_MOSTPOPULAR",
+            "FeedDbStorage.FIND_ALL_QUERY");
+
+    //H2 пишет в плане выбранный индекс, а условие по нему - после двоеточия. Индекс без условия - это полный обход
+    private static final Pattern FULL_SCAN = Pattern.compile("tableScan|/\\* PUBLIC\\.\\w+ \\*/");
+
+    private final JdbcTemplate jdbc;
+
+    static Stream<Arguments> queries() throws IllegalAccessException {
+        List<Arguments> queries = new ArrayList<>();
+
+        for (Class<?> storage : List.of(FilmDbStorage.class, UserDbStorage.class,
+                ReviewDbStorage.class, FeedDbStorage.class, LikeWriteBuffer.class)) {
+            for (Field field : storage.getDeclaredFields()) {
+                if (field.getType() != String.class || !Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+
+                field.setAccessible(true);
+
+                String name = storage.getSimpleName() + "." + field.getName();
+                String sql = ((String) field.get(null)).replace("%s", "?, ?").trim();
+                boolean plainInsert = sql.startsWith("INSERT") && !sql.contains("WHERE");
+
+                if (sql.matches("(?is)(SELECT|UPDATE|DELETE|INSERT)\\s.*") && !plainInsert
+                        && !FULL_SCANS.contains(name)) {
+                    queries.add(Arguments.of(name, sql));
+                }
+            }
+        }
+
+        return queries.stream();
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("queries")
+    public void testQueryUsesIndex(String name, String sql) {
+        int params = (int) sql.chars().filter(c -> c == '?').count();
+        String plan = String.join("\n", jdbc.query("EXPLAIN " + sql,
+                (rs, rowNum) -> rs.getString(1), new Object[params]));
+
+        Assertions.assertFalse(FULL_SCAN.matcher(plan).find(), name + " читает таблицу целиком:\n" + plan);
+    }
+}
@@ -4,10 +4,14 @@ import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.ComponentScan;
+import ru.yandex.practicum.filmorate.exception.DuplicatedDataException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.IntSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.dao.UserDbStorage;
 
@@ -16,19 +20,20 @@ import java.util.*;
 
 @JdbcTest
 @ComponentScan("ru.yandex.practicum.filmorate")
+@ImportAutoConfiguration(ValidationAutoConfiguration.class)
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class UserDbStorageTests {
     private final UserDbStorage storage;
 
     @Test
-    public void testGetAllUser() throws NotFoundException {
+    public void testGetAllUser() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         Collection<User> users = storage.getUsers();
@@ -37,13 +42,13 @@ public class UserDbStorageTests {
     }
 
     @Test
-    public void testGetUser() throws NotFoundException {
+    public void testGetUser() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         User user1 = storage.getUser(user.getId());
@@ -53,27 +58,61 @@ public class UserDbStorageTests {
     }
 
     @Test
-    public void testGetFriends() throws NotFoundException {
-        User user1 = User.builder()
+    public void testFriendsTagChangesWithFriends() throws NotFoundException, DuplicatedDataException {
+        User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
-        User user2 = User.builder()
+        User friend = User.builder()
+                .email("f@mail.e")
+                .login("friend")
+                .name("friend")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        storage.addUser(user);
+        storage.addUser(friend);
+
+        String empty = storage.getFriendsTag(user.getId());
+
+        Assertions.assertEquals(empty, storage.getFriendsTag(user.getId()));
+
+        storage.addFriend(friend, user, false);
+        String added = storage.getFriendsTag(user.getId());
+
+        Assertions.assertNotEquals(empty, added);
+
+        friend.setName("renamed");
+        storage.updateUser(friend);
+
+        Assertions.assertNotEquals(added, storage.getFriendsTag(user.getId()));
+    }
+
+    @Test
+    public void testGetFriends() throws NotFoundException, DuplicatedDataException {
+        User user1 = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
+                .build();
+        User user2 = User.builder()
+                .email("e2@mail.e")
+                .login("login2")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
                 .build();
         User user3 = User.builder()
-                .email("e@mail.e")
-                .login("login")
+                .email("e3@mail.e")
+                .login("login3")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user1);
         storage.addUser(user2);
@@ -91,27 +130,27 @@ public class UserDbStorageTests {
     }
 
     @Test
-    public void testGetMutualFriends() throws NotFoundException {
+    public void testGetMutualFriends() throws NotFoundException, DuplicatedDataException {
         User user1 = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         User user2 = User.builder()
-                .email("e@mail.e")
-                .login("login")
+                .email("e2@mail.e")
+                .login("login2")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         User user3 = User.builder()
-                .email("e@mail.e")
-                .login("login")
+                .email("e3@mail.e")
+                .login("login3")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user1);
         storage.addUser(user2);
@@ -128,13 +167,13 @@ public class UserDbStorageTests {
     }
 
     @Test
-    public void testAddUser() throws NotFoundException {
+    public void testAddUser() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
 
         storage.addUser(user);
@@ -143,13 +182,13 @@ public class UserDbStorageTests {
     }
 
     //@Test
-    public void testAddFriend() throws NotFoundException {
+    public void testAddFriend() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         storage.addFriend(user, storage.getUser(1), false);
@@ -160,13 +199,13 @@ public class UserDbStorageTests {
     }
 
     //@Test
-    public void testAddFriendNotConfirmed() throws NotFoundException {
+    public void testAddFriendNotConfirmed() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         storage.addFriend(user, storage.getUser(1), false);
@@ -176,13 +215,13 @@ public class UserDbStorageTests {
     }
 
     @Test
-    public void testUpdateUser() throws NotFoundException {
+    public void testUpdateUser() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
 
@@ -192,7 +231,7 @@ public class UserDbStorageTests {
                 .login("new_login")
                 .name("new_name")
                 .birthday(LocalDate.now().minusDays(23))
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.updateUser(user2);
 
@@ -205,13 +244,169 @@ public class UserDbStorageTests {
     }
 
     @Test
-    public void testDeleteUser() throws NotFoundException {
+    public void testEmailAndLoginAreUnique() throws NotFoundException, DuplicatedDataException {
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        User other = User.builder()
+                .email("other@mail.e")
+                .login("other")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        storage.addUser(user);
+        storage.addUser(other);
+
+        Assertions.assertTrue(storage.isEmailTaken("e@mail.e", other.getId()));
+        Assertions.assertFalse(storage.isEmailTaken("e@mail.e", user.getId()));
+        Assertions.assertTrue(storage.isLoginTaken("other", user.getId()));
+        Assertions.assertFalse(storage.isLoginTaken("free", user.getId()));
+
+        other.setLogin("login");
+        Assertions.assertThrows(DuplicatedDataException.class, () -> storage.updateUser(other));
+        Assertions.assertThrows(DuplicatedDataException.class, () -> storage.addUser(User.builder()
+                .email("e@mail.e")
+                .login("third")
+                .friends(IntSet.EMPTY)
+                .build()));
+    }
+
+    @Test
+    public void testFriendGraphFollowsFriendChanges() throws NotFoundException, DuplicatedDataException {
+        List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            User user = User.builder()
+                    .email("e" + i + "@mail.e")
+                    .login("login" + i)
+                    .name("name")
+                    .birthday(LocalDate.now())
+                    .friends(IntSet.EMPTY)
+                    .build();
+            storage.addUser(user);
+            users.add(user);
+        }
+        storage.addFriend(users.get(1), users.get(0), false);
+        storage.addFriend(users.get(2), users.get(0), false);
+        storage.addFriend(users.get(2), users.get(1), false);
+
+        Assertions.assertEquals(IntSet.of(users.get(1).getId(), users.get(2).getId()),
+                storage.getUser(users.get(0).getId()).getFriends());
+        Assertions.assertEquals(List.of(users.get(2)),
+                List.copyOf(storage.getMutualFriend(users.get(0).getId(), users.get(1).getId())));
+
+        storage.deleteFriend(users.get(1).getId(), users.get(0).getId());
+        storage.deleteUser(users.get(2).getId());
+
+        Assertions.assertTrue(storage.getFriends(users.get(0).getId()).isEmpty());
+        Assertions.assertTrue(storage.getUser(users.get(1).getId()).getFriends().isEmpty());
+    }
+
+    @Test
+    public void testFriendSuggestionsRankedByMutualFriends() throws NotFoundException, DuplicatedDataException {
+        List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            User user = User.builder()
+                    .email("e" + i + "@mail.e")
+                    .login("login" + i)
+                    .name("name")
+                    .birthday(LocalDate.now())
+                    .friends(IntSet.EMPTY)
+                    .build();
+            storage.addUser(user);
+            users.add(user);
+        }
+        storage.addFriend(users.get(1), users.get(0), false);
+        storage.addFriend(users.get(2), users.get(0), false);
+        storage.addFriend(users.get(1), users.get(4), false);
+        storage.addFriend(users.get(1), users.get(3), false);
+        storage.addFriend(users.get(2), users.get(3), false);
+
+        Assertions.assertEquals(List.of(users.get(3), users.get(4)),
+                storage.getFriendSuggestions(users.get(0).getId(), 10));
+        Assertions.assertEquals(List.of(users.get(3)), storage.getFriendSuggestions(users.get(0).getId(), 1));
+
+        storage.addFriend(users.get(3), users.get(0), false);
+
+        Assertions.assertEquals(List.of(users.get(4)), storage.getFriendSuggestions(users.get(0).getId(), 10));
+    }
+
+    @Test
+    public void testFindUserLoadsOnlyRow() throws NotFoundException, DuplicatedDataException {
+        User user = User.builder()
+                .email("e@mail.e")
+                .login("login")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        User friend = User.builder()
+                .email("friend@mail.e")
+                .login("friend")
+                .name("name")
+                .birthday(LocalDate.now())
+                .friends(IntSet.EMPTY)
+                .build();
+        storage.addUser(user);
+        storage.addUser(friend);
+        storage.addFriend(friend, user, false);
+
+        User row = storage.findUser(user.getId()).orElseThrow();
+
+        Assertions.assertEquals("login", row.getLogin());
+        Assertions.assertTrue(row.getFriends().isEmpty());
+        Assertions.assertEquals(IntSet.of(friend.getId()), storage.getFriendIds(user.getId()));
+        Assertions.assertTrue(storage.isFriend(user.getId(), friend.getId()));
+        Assertions.assertFalse(storage.isFriend(friend.getId(), user.getId()));
+        Assertions.assertTrue(storage.findUser(-1).isEmpty());
+    }
+
+    @Test
+    public void testFriendsPagedAndCounted() throws NotFoundException, DuplicatedDataException {
+        List<User> users = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            User user = User.builder()
+                    .email("e" + i + "@mail.e")
+                    .login("login" + i)
+                    .name("name")
+                    .birthday(LocalDate.now())
+                    .friends(IntSet.EMPTY)
+                    .build();
+            storage.addUser(user);
+            users.add(user);
+        }
+        for (int i = 4; i > 1; i--) {
+            storage.addFriend(users.get(i), users.get(0), false);
+            storage.addFriend(users.get(i), users.get(1), false);
+        }
+        int id = users.get(0).getId();
+
+        Assertions.assertEquals(3, storage.getFriendsCount(id));
+        Assertions.assertEquals(List.of(users.get(2), users.get(3)), storage.getFriends(id, 0, 2));
+        Assertions.assertEquals(List.of(users.get(4)), storage.getFriends(id, users.get(3).getId(), 2));
+        Assertions.assertEquals(List.of(users.get(3), users.get(4)),
+                storage.getMutualFriends(id, users.get(1).getId(), users.get(2).getId(), 10));
+
+        storage.deleteFriend(users.get(2).getId(), id);
+
+        Assertions.assertEquals(2, storage.getFriendsCount(id));
+    }
+
+    @Test
+    public void testDeleteUser() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
 
         storage.addUser(user);
@@ -224,13 +419,13 @@ public class UserDbStorageTests {
     }
 
    //@Test
-    public void testDeleteFriend() throws NotFoundException {
+    public void testDeleteFriend() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         storage.addFriend(user, storage.getUser(1), false);
@@ -247,13 +442,13 @@ public class UserDbStorageTests {
     }
 
     //@Test
-    public void testDeleteFriendNotConfirmed() throws NotFoundException {
+    public void testDeleteFriendNotConfirmed() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         storage.addFriend(user, storage.getUser(1), false);
@@ -268,13 +463,13 @@ public class UserDbStorageTests {
     }
 
     //@Test
-    public void testNotDeleteFriendNotConfirmed() throws NotFoundException {
+    public void testNotDeleteFriendNotConfirmed() throws NotFoundException, DuplicatedDataException {
         User user = User.builder()
                 .email("e@mail.e")
                 .login("login")
                 .name("name")
                 .birthday(LocalDate.now())
-                .friends(new HashMap<>())
+                .friends(IntSet.EMPTY)
                 .build();
         storage.addUser(user);
         storage.addFriend(user, storage.getUser(1), false);
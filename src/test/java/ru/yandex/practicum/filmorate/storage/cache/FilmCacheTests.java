@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class FilmCacheTests {
+    @Test
+    public void testInvalidateDuringLoadDropsLoadedFilm() throws Exception {
+        FilmCache cache = new FilmCache(new EntityVersions(), 100, 300);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        //Первая загрузка читает старую строку и ждет, пока параллельно пройдет сброс
+        Thread reader = new Thread(() -> {
+            try {
+                cache.get(1, id -> {
+                    loads.incrementAndGet();
+                    loading.countDown();
+                    await(release);
+                    return Film.builder().id(id).name("old").build();
+                });
+            } catch (NotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reader.start();
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        Thread invalidator = new Thread(() -> cache.invalidate(1));
+        invalidator.start();
+        awaitBlockedOrDone(invalidator);
+
+        release.countDown();
+        reader.join(5000);
+        invalidator.join(5000);
+
+        Film film = cache.get(1, id -> {
+            loads.incrementAndGet();
+            return Film.builder().id(id).name("new").build();
+        });
+
+        Assertions.assertEquals("new", film.getName());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testTagChangesTogetherWithCachedFilm() throws NotFoundException {
+        EntityVersions versions = new EntityVersions();
+        FilmCache cache = new FilmCache(versions, 100, 300);
+        String before = cache.tag(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidate(1);
+            //Параллельный читатель до коммита видит еще старую строку и кэширует ее под промежуточной версией
+            cache.get(1, id -> Film.builder().id(id).name("old").build());
+            String uncommitted = cache.tag(1);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+            Assertions.assertNotEquals(before, uncommitted);
+            Assertions.assertNotEquals(uncommitted, cache.tag(1));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        //Под итоговой версией отдается только фильм, прочитанный после коммита
+        Film film = cache.get(1, id -> Film.builder().id(id).name("new").build());
+
+        Assertions.assertEquals("new", film.getName());
+    }
+
+    @Test
+    public void testDirectorFilmsInvalidatedDuringLoadAreReloaded() throws Exception {
+        DirectorFilmsCache cache = new DirectorFilmsCache(100, 300);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        Thread reader = new Thread(() -> cache.get(1, id -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return List.of(new DirectorFilmsCache.Entry(10, null, 0));
+        }));
+        reader.start();
+        Assertions.assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        //Режиссер фильма еще не известен кэшу: сброс по фильму ловится только поколением
+        cache.invalidateFilms(List.of(10));
+        release.countDown();
+        reader.join(5000);
+
+        cache.get(1, id -> {
+            loads.incrementAndGet();
+            return List.of();
+        });
+
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //Сброс либо уже прошел, либо ждет окончания загрузки
+    private static void awaitBlockedOrDone(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (System.currentTimeMillis() < deadline) {
+            Thread.State state = thread.getState();
+
+            if (state == Thread.State.TERMINATED || state == Thread.State.BLOCKED
+                    || state == Thread.State.WAITING) {
+                return;
+            }
+
+            Thread.sleep(10);
+        }
+    }
+}
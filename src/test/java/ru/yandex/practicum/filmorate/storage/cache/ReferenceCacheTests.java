@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReferenceCacheTests {
+    private final List<Genre> rows = new ArrayList<>(List.of(Genre.builder().id(1).name("Комедия").build()));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testMissReloadsFromDb() {
+        ReferenceCache<Genre> cache = cache(Duration.ZERO);
+
+        Assertions.assertEquals("Комедия", cache.find(1).getName());
+
+        rows.add(Genre.builder().id(2).name("Драма").build());
+
+        Assertions.assertTrue(cache.contains(2));
+        Assertions.assertEquals("Драма", cache.find(2).getName());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testMissesDoNotReloadMoreOftenThanInterval() {
+        ReferenceCache<Genre> cache = cache(Duration.ofHours(1));
+
+        cache.find(1);
+        rows.add(Genre.builder().id(2).name("Драма").build());
+
+        Assertions.assertNull(cache.find(2));
+        Assertions.assertFalse(cache.contains(2));
+        Assertions.assertEquals(1, loads.get());
+
+        cache.reload();
+
+        Assertions.assertEquals(2, cache.all().size());
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    private ReferenceCache<Genre> cache(Duration missReloadInterval) {
+        return new ReferenceCache<>("жанров", () -> {
+            loads.incrementAndGet();
+            return List.copyOf(rows);
+        }, Genre::getId, genre -> genre.toBuilder().build(), missReloadInterval);
+    }
+}
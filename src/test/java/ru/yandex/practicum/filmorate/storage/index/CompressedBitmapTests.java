@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+
+public class CompressedBitmapTests {
+    @Test
+    public void testMatchesSetAcrossContainerConversions() {
+        CompressedBitmap even = new CompressedBitmap();
+        CompressedBitmap thirds = new CompressedBitmap();
+        TreeSet<Integer> expectedEven = new TreeSet<>();
+        TreeSet<Integer> expectedThirds = new TreeSet<>();
+
+        //20000 четных значений в первом контейнере - это уже битовая карта, плюс пара значений в следующих
+        for (int i = 0; i < 40_000; i += 2) {
+            even.add(i);
+            expectedEven.add(i);
+        }
+        for (int i = 0; i < 200_000; i += 3) {
+            thirds.add(i);
+            expectedThirds.add(i);
+        }
+
+        Assertions.assertFalse(even.add(10));
+        Assertions.assertEquals(expectedEven.size(), even.cardinality());
+
+        TreeSet<Integer> expectedCommon = new TreeSet<>(expectedEven);
+        expectedCommon.retainAll(expectedThirds);
+
+        Assertions.assertArrayEquals(expectedCommon.stream().mapToInt(i -> i).toArray(), even.and(thirds).toArray());
+        Assertions.assertEquals(expectedCommon.size(), even.andCardinality(thirds));
+        Assertions.assertEquals(expectedCommon.size(), thirds.andCardinality(even));
+
+        //Удаляем почти все, контейнер возвращается к массиву
+        IntStream.range(0, 39_990).filter(i -> i % 2 == 0).forEach(i -> {
+            Assertions.assertTrue(even.remove(i));
+            expectedEven.remove(i);
+        });
+
+        Assertions.assertArrayEquals(expectedEven.stream().mapToInt(i -> i).toArray(), even.toArray());
+        Assertions.assertTrue(even.contains(39_998));
+        Assertions.assertFalse(even.contains(2));
+        Assertions.assertFalse(even.remove(2));
+    }
+}